@@ -0,0 +1,62 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+// Fixtures shared by the benchmarks: resources shaped like the ones found on
+// real OCF networks, with a mix of property types.
+final class OcfBenchmarkData {
+    private OcfBenchmarkData() {}
+
+    static OcfResource resource(int index, int properties) {
+        OcfResource resource = new OcfResource(
+            "coap://192.168." + (index / 250 % 250) + "." + (index % 250) + ":5683",
+            "/a/light/" + index);
+
+        resource.setResourceTypes(new ArrayList<String>(Arrays.asList(
+            "oic.r.switch.binary", "oic.r.light.brightness")));
+        resource.setInterfaces(new ArrayList<String>(Arrays.asList(
+            "oic.if.baseline", "oic.if.a")));
+        resource.setMediaTypes(new ArrayList<String>(Arrays.asList(
+            "application/cbor")));
+        resource.setObservable(true);
+
+        for (int i = 0; i < properties; i++) {
+            resource.setProperty("p" + i, value(index, i));
+        }
+
+        return resource;
+    }
+
+    static OcfResourceRepresentation representation(int index, int properties) {
+        OcfResourceRepresentation repr = new OcfResourceRepresentation();
+        for (int i = 0; i < properties; i++) {
+            repr.setValue("p" + i, value(index, i));
+        }
+        return repr;
+    }
+
+    static OcfDevice device(int index) {
+        OcfDevice device = new OcfDevice();
+        device.setUuid("2d1e6f3c-0000-4000-8000-" + String.format("%012d", index));
+        device.setUrl("coap://192.168.1." + (index % 250) + ":5683");
+        device.setName("Device " + index);
+        device.setDataModels(new ArrayList<String>(Arrays.asList("ocf.res.1.3.0")));
+        device.setCoreSpecVersion("ocf.1.3.0");
+        device.setRole("server");
+        return device;
+    }
+
+    // Cycles through the value types the native side produces.
+    private static Object value(int index, int i) {
+        switch (i % 5) {
+            case 0: return index + i;
+            case 1: return (index + i) / 3.0;
+            case 2: return (index + i) % 2 == 0;
+            case 3: return "value-" + index + "-" + i;
+            default: return new int[] {index, i, index + i};
+        }
+    }
+}
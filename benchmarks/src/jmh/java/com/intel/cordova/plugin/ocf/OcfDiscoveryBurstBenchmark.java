@@ -0,0 +1,44 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+// A discovery burst: thousands of resources found at once, each one
+// registered by key and reported to the frontend as an event.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OcfDiscoveryBurstBenchmark {
+    @Param({"1000", "5000"})
+    public int resources;
+
+    @Param({"4"})
+    public int properties;
+
+    @Benchmark
+    public void discoveryBurst(Blackhole bh) throws JSONException {
+        Map<String, OcfResource> registry = new HashMap<String, OcfResource>();
+
+        for (int i = 0; i < this.resources; i++) {
+            OcfResource resource = OcfBenchmarkData.resource(i, this.properties);
+            registry.put(resource.getId().getUniqueKey(), resource);
+            bh.consume(new OcfResourceEvent(resource).toJSON().toString());
+        }
+
+        bh.consume(registry);
+    }
+}
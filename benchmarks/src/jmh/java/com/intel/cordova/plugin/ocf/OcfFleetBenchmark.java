@@ -0,0 +1,83 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+// Discovery of a whole simulated fleet (see `OcfFleetSimulator`), with every
+// device answering at once: each resource is registered by key and reported
+// to the frontend as an event, like the mock backend does in simulation mode.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OcfFleetBenchmark {
+    @Param({"100"})
+    public int devices;
+
+    @Param({"10", "100"})
+    public int resourcesPerDevice;
+
+    private OcfFleetSimulator simulator;
+    private Map<String, OcfResource> registry;
+    private CountDownLatch found;
+    private Blackhole bh;
+
+    @Setup(Level.Invocation)
+    public void setUp(final Blackhole bh) {
+        OcfFleetSimulator.Config config = new OcfFleetSimulator.Config();
+        config.devices = this.devices;
+        config.resourcesPerDevice = this.resourcesPerDevice;
+        config.discoveryWindow = 0;
+        config.observeRate = 0;
+
+        this.bh = bh;
+        this.registry = new HashMap<String, OcfResource>();
+        this.found = new CountDownLatch(this.devices * this.resourcesPerDevice);
+
+        final OcfFleetBenchmark self = this;
+        this.simulator = new OcfFleetSimulator(config, new OcfFleetSimulator.Listener() {
+            public void onDeviceFound(OcfDevice device) {}
+
+            public void onResourceFound(String requestId, OcfResource resource) {
+                self.registry.put(resource.getId().getUniqueKey(), resource);
+                try {
+                    self.bh.consume(OcfJsonWriter.encode(new OcfResourceEvent(resource)));
+                } catch (JSONException ex) {
+                    throw new RuntimeException(ex);
+                }
+                self.found.countDown();
+            }
+
+            public void onResourceUpdate(String key, OcfResourceRepresentation repr) {}
+        });
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        this.simulator.stop();
+    }
+
+    @Benchmark
+    public Map<String, OcfResource> fleetDiscovery() throws InterruptedException {
+        this.simulator.discoverResources(null, null, null);
+        this.found.await();
+        return this.registry;
+    }
+}
@@ -0,0 +1,90 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+// Cost of converting a single resource, of growing size, to and from JSON,
+// as done for every discovery event, update and PUT.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OcfModelBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    public int properties;
+
+    private OcfResource resource;
+    private OcfResourceEvent resourceEvent;
+    private OcfDeviceEvent deviceEvent;
+    private JSONObject resourceJson;
+
+    @Setup
+    public void setup() throws JSONException {
+        this.resource = OcfBenchmarkData.resource(1, this.properties);
+        this.resourceEvent = new OcfResourceEvent(this.resource);
+        this.deviceEvent = new OcfDeviceEvent(OcfBenchmarkData.device(1));
+        this.resourceJson = this.resource.toJSON();
+    }
+
+    @Benchmark
+    public JSONObject resourceToJSON() throws JSONException {
+        return this.resource.toJSON();
+    }
+
+    @Benchmark
+    public OcfResource resourceFromJSON() throws JSONException {
+        return OcfResource.fromJSON(this.resourceJson);
+    }
+
+    @Benchmark
+    public JSONObject representationToJSON() throws JSONException {
+        return this.resource.getProperties().toJSON();
+    }
+
+    // What actually crosses the bridge: PluginResult stringifies the tree.
+    @Benchmark
+    public String resourceEventToString() throws JSONException {
+        return this.resourceEvent.toJSON().toString();
+    }
+
+    // The same, through the streaming writer.
+    @Benchmark
+    public String resourceEventWrite() throws JSONException {
+        return OcfJsonWriter.encode(this.resourceEvent).toString();
+    }
+
+    // The binary alternative, selected with `format: "cbor"`.
+    @Benchmark
+    public byte[] resourceEventWriteCbor() throws JSONException {
+        OcfCborWriter writer = OcfCborWriter.obtain();
+        this.resourceEvent.write(writer);
+        return writer.toByteArray();
+    }
+
+    @Benchmark
+    public String deviceEventToString() throws JSONException {
+        return this.deviceEvent.toJSON().toString();
+    }
+
+    @Benchmark
+    public String deviceEventWrite() throws JSONException {
+        return OcfJsonWriter.encode(this.deviceEvent).toString();
+    }
+
+    @Benchmark
+    public String uniqueKey() {
+        return this.resource.getId().getUniqueKey();
+    }
+}
@@ -0,0 +1,73 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+// The observe path: a burst of notifications from a set of resources goes
+// through the update queue and is drained into the JSON batch sent to the
+// frontend.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OcfResourceUpdateBenchmark {
+    @Param({"10", "100"})
+    public int resourceCount;
+
+    @Param({"10"})
+    public int notificationsPerResource;
+
+    @Param({"coalesce", "drop-oldest"})
+    public String policy;
+
+    @Param({"false", "true"})
+    public boolean delta;
+
+    private OcfResource[] resources;
+    private OcfResourceRepresentation[][] notifications;
+    private OcfResourceUpdateQueue queue;
+
+    @Setup
+    public void setup() throws JSONException {
+        this.resources = new OcfResource[this.resourceCount];
+        this.notifications = new OcfResourceRepresentation[this.resourceCount][];
+        for (int i = 0; i < this.resourceCount; i++) {
+            this.resources[i] = OcfBenchmarkData.resource(i, 10);
+            this.notifications[i] = new OcfResourceRepresentation[this.notificationsPerResource];
+            for (int j = 0; j < this.notificationsPerResource; j++) {
+                this.notifications[i][j] = OcfBenchmarkData.representation(i + j, 10);
+            }
+        }
+
+        this.queue = new OcfResourceUpdateQueue();
+        this.queue.configure(new JSONObject()
+            .put("policy", this.policy)
+            .put("capacity", this.resourceCount * this.notificationsPerResource)
+            .put("delta", this.delta));
+    }
+
+    @Benchmark
+    public String observeBurst() throws JSONException {
+        for (int j = 0; j < this.notificationsPerResource; j++) {
+            for (int i = 0; i < this.resourceCount; i++) {
+                this.queue.add(this.resources[i], this.notifications[i][j]);
+            }
+        }
+
+        JSONArray updates = this.queue.drainToJSON();
+        return updates.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package android.util;
+
+// Stand-in for the Android logger, so that the model classes can be
+// benchmarked on a desktop JVM. Logging is a no-op, as it would be with the
+// log level set above debug.
+public final class Log {
+    private Log() {}
+
+    public static int v(String tag, String msg) { return 0; }
+    public static int d(String tag, String msg) { return 0; }
+    public static int i(String tag, String msg) { return 0; }
+    public static int w(String tag, String msg) { return 0; }
+    public static int w(String tag, String msg, Throwable tr) { return 0; }
+    public static int e(String tag, String msg) { return 0; }
+    public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
@@ -0,0 +1,253 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+// `OcfJsonWriter` must produce exactly the text `toJSON().toString()` does,
+// as the frontend parses both. Checked against Android's org.json, on the
+// edge cases of escaping, nulls and number formatting, and on randomized
+// resources and devices.
+//
+// The android-json build on Maven keeps object members in a HashMap, where
+// Android keeps them in insertion order, which is the writer's. So members
+// are sorted before comparing; everything else, i.e. every string and
+// number, is compared as written.
+public class OcfJsonWriterParityTest {
+    private static final String[] STRINGS = {
+        "", "plain", "quote \" inside", "back\\slash", "a/b </script>",
+        "tab\tnew\nline\rfeed\fback\b", "\u0000\u0001\u001f\u007f",
+        "é中  ", "💡 emoji", "\ud800 lone"
+    };
+
+    private static final double[] DOUBLES = {
+        0.0, -0.0, 1.0, -1.0, 0.1, 1.5, 3.0 / 7, 1e-7, 1e21, -1e21, 123456789.0,
+        Double.MIN_VALUE, Double.MAX_VALUE, (double) Long.MAX_VALUE,
+        (double) Long.MIN_VALUE, 9007199254740993.0
+    };
+
+    private static final long[] LONGS = {
+        0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        Long.MAX_VALUE, Long.MIN_VALUE, 9007199254740993L
+    };
+
+    @Test
+    public void escaping() throws JSONException {
+        for (String s: STRINGS) {
+            OcfResource resource = new OcfResource(s, s);
+            resource.setResourceTypes(new ArrayList<String>(Arrays.asList(s)));
+            resource.setProperty(s.length() > 0 ? s : "empty", s);
+            assertSameJSON(new OcfResourceEvent(resource));
+        }
+    }
+
+    @Test
+    public void nulls() throws JSONException {
+        OcfResource resource = new OcfResource(null, null);
+        resource.setProperty("null", null);
+        resource.setProperty("jsonNull", JSONObject.NULL);
+        resource.setProperty("nullsInArray", new Object[] {null, JSONObject.NULL, "x"});
+        assertSameJSON(new OcfResourceEvent(resource));
+        assertSameJSON(new OcfResourceUpdateEvent(resource));
+
+        assertSameJSON(new OcfDeviceEvent(new OcfDevice()));
+    }
+
+    @Test
+    public void numbers() throws JSONException {
+        OcfResource resource = new OcfResource("h", "/numbers");
+        for (int i = 0; i < DOUBLES.length; i++) {
+            resource.setProperty("d" + i, DOUBLES[i]);
+            resource.getProperties().setDouble("typedD" + i, DOUBLES[i]);
+        }
+        for (int i = 0; i < LONGS.length; i++) {
+            resource.setProperty("l" + i, LONGS[i]);
+            resource.getProperties().setLong("typedL" + i, LONGS[i]);
+        }
+        resource.setProperty("int", 42);
+        resource.setProperty("float", 0.1f);
+        resource.setProperty("doubles", DOUBLES);
+        resource.setProperty("ints", new int[] {0, -1, Integer.MAX_VALUE});
+        assertSameJSON(new OcfResourceEvent(resource));
+
+        try {
+            OcfJsonWriter.obtain().value(Double.NaN);
+            fail("NaN must be rejected");
+        } catch (JSONException ex) {
+            // As JSONObject does.
+        }
+    }
+
+    @Test
+    public void nestedArrays() throws JSONException {
+        OcfResource resource = new OcfResource("h", "/arrays");
+        resource.setProperty("empty", new int[0]);
+        resource.setProperty("booleans", new boolean[] {true, false});
+        resource.setProperty("objects", new Object[] {1, "two", 3.5, true});
+        resource.setProperty("json", new JSONArray("[[1,[2,[\"3\"]]],{\"a\":[null]},[]]"));
+        resource.setProperty("mixed", new Object[] {
+            new JSONArray("[1,2]"), new JSONObject("{\"k\":\"v/w\"}")
+        });
+        resource.setProperty("object", new JSONObject("{\"range\":[0,100],\"step\":0.5}"));
+        assertSameJSON(new OcfResourceEvent(resource));
+    }
+
+    @Test
+    public void randomized() throws JSONException {
+        Random random = new Random(12345);
+        for (int i = 0; i < 2000; i++) {
+            OcfResource resource = new OcfResource(
+                randomString(random), "/r/" + randomString(random));
+            resource.setResourceTypes(new ArrayList<String>(Arrays.asList(
+                randomString(random), randomString(random))));
+            resource.setInterfaces(new ArrayList<String>(Arrays.asList(randomString(random))));
+            resource.setObservable(random.nextBoolean());
+
+            int properties = random.nextInt(12);
+            for (int p = 0; p < properties; p++) {
+                resource.setProperty(randomString(random), randomValue(random, 0));
+            }
+
+            assertSameJSON(new OcfResourceEvent(resource, random.nextBoolean()));
+            assertSameJSON(new OcfResourceUpdateEvent(resource));
+        }
+
+        for (int i = 0; i < 200; i++) {
+            OcfDevice device = new OcfDevice();
+            device.setUuid(randomString(random));
+            device.setName(random.nextBoolean() ? randomString(random) : null);
+            device.setUrl(randomString(random));
+            device.setDataModels(new ArrayList<String>(Arrays.asList(randomString(random))));
+            assertSameJSON(new OcfDeviceEvent(device, random.nextBoolean()));
+        }
+    }
+
+    private static void assertSameJSON(OcfObjectInterface value) throws JSONException {
+        OcfJsonWriter writer = OcfJsonWriter.obtain();
+        value.write(writer);
+        assertEquals(
+            sortMembers(value.toJSON().toString()), sortMembers(writer.toString()));
+    }
+
+    // Rewrites `json` with the members of every object sorted, keeping the
+    // text of each token.
+    private static String sortMembers(String json) {
+        int[] pos = {0};
+        String sorted = sortValue(json, pos);
+        assertEquals("trailing text in " + json, json.length(), pos[0]);
+        return sorted;
+    }
+
+    private static String sortValue(String json, int[] pos) {
+        char c = json.charAt(pos[0]);
+        if (c == '{') {
+            List<String> members = new ArrayList<String>();
+            pos[0]++;
+            while (json.charAt(pos[0]) != '}') {
+                String name = token(json, pos);
+                pos[0]++; // ':'
+                members.add(name + ":" + sortValue(json, pos));
+                if (json.charAt(pos[0]) == ',') {
+                    pos[0]++;
+                }
+            }
+            pos[0]++;
+            Collections.sort(members);
+            return "{" + join(members) + "}";
+        } else if (c == '[') {
+            List<String> elements = new ArrayList<String>();
+            pos[0]++;
+            while (json.charAt(pos[0]) != ']') {
+                elements.add(sortValue(json, pos));
+                if (json.charAt(pos[0]) == ',') {
+                    pos[0]++;
+                }
+            }
+            pos[0]++;
+            return "[" + join(elements) + "]";
+        }
+        return token(json, pos);
+    }
+
+    // A string, number or literal, as written.
+    private static String token(String json, int[] pos) {
+        int start = pos[0];
+        if (json.charAt(start) == '"') {
+            int i = start + 1;
+            while (json.charAt(i) != '"') {
+                i += json.charAt(i) == '\\' ? 2 : 1;
+            }
+            pos[0] = i + 1;
+        } else {
+            int i = start;
+            while (i < json.length() && ",:]}".indexOf(json.charAt(i)) < 0) {
+                i++;
+            }
+            pos[0] = i;
+        }
+        return json.substring(start, pos[0]);
+    }
+
+    private static String join(List<String> items) {
+        StringBuilder sb = new StringBuilder();
+        for (String item: items) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(item);
+        }
+        return sb.toString();
+    }
+
+    private static String randomString(Random random) {
+        if (random.nextInt(4) == 0) {
+            return STRINGS[random.nextInt(STRINGS.length)];
+        }
+
+        char[] chars = new char[random.nextInt(10)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = random.nextInt(8) == 0 ?
+                (char) random.nextInt(0x80) : (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    private static Object randomValue(Random random, int depth) throws JSONException {
+        switch (random.nextInt(depth < 2 ? 9 : 7)) {
+            case 0: return random.nextInt();
+            case 1: return random.nextLong();
+            case 2: return DOUBLES[random.nextInt(DOUBLES.length)];
+            case 3: return random.nextDouble() * 1000 - 500;
+            case 4: return random.nextBoolean();
+            case 5: return randomString(random);
+            case 6: return null;
+            case 7: {
+                JSONArray array = new JSONArray();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    array.put(randomValue(random, depth + 1));
+                }
+                return array;
+            }
+            default: {
+                double[] array = new double[random.nextInt(4)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = random.nextDouble();
+                }
+                return array;
+            }
+        }
+    }
+}
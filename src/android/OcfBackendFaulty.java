@@ -0,0 +1,292 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cordova
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A backend wrapping another one, and making its results arrive as if they
+// came over a bad network, e.g. to tune timeouts and concurrency limits
+// without one. It is selected with a "faulty:" prefix, like "faulty:mock",
+// and configured with the `faults` object of the backend options:
+//
+//  * `latency`: how long results are held back, as
+//    `{distribution: "fixed", value}`,
+//    `{distribution: "uniform", min, max}`,
+//    `{distribution: "exponential", mean}` or
+//    `{distribution: "lognormal", median, sigma}`, in ms.
+//  * `dropRate`: the probability that the completion of an update is never
+//    delivered.
+//  * `duplicateRate`: the probability that a found resource is reported
+//    twice.
+//  * `reorderRate`: the probability that a batch of observe notifications
+//    is held back for up to `reorderDelay` ms, letting later ones overtake
+//    it.
+//  * `seed`: makes which results are affected reproducible. Timing still
+//    depends on the wrapped backend.
+//
+// Injected faults are counted in the metrics ("faults.*"), and the time from
+// each call to the delivery of each of its results is recorded in
+// "delivered.<action>" histograms.
+public class OcfBackendFaulty implements OcfBackendInterface {
+    public static final String PREFIX = "faulty:";
+
+    public static final int DEFAULT_REORDER_DELAY = 500;
+
+    private enum Kind { DISCOVERY, COMPLETION, NOTIFICATION }
+
+    // A distribution of delays, in ms.
+    public static class Latency {
+        private final String distribution;
+        private final double a;
+        private final double b;
+
+        private Latency(String distribution, double a, double b) {
+            this.distribution = distribution;
+            this.a = a;
+            this.b = b;
+        }
+
+        public static Latency fromJSON(JSONObject obj) throws JSONException {
+            if (obj == null) {
+                return new Latency("fixed", 0, 0);
+            }
+
+            String distribution = obj.optString("distribution", "fixed");
+            if ("fixed".equals(distribution)) {
+                return new Latency(distribution, obj.optDouble("value", 0), 0);
+            } else if ("uniform".equals(distribution)) {
+                return new Latency(distribution,
+                    obj.optDouble("min", 0), obj.optDouble("max", 0));
+            } else if ("exponential".equals(distribution)) {
+                return new Latency(distribution, obj.optDouble("mean", 0), 0);
+            } else if ("lognormal".equals(distribution)) {
+                return new Latency(distribution,
+                    obj.optDouble("median", 0), obj.optDouble("sigma", 1));
+            }
+            throw new JSONException("Invalid latency distribution: " + distribution);
+        }
+
+        public long next(Random random) {
+            double ms;
+            if ("uniform".equals(this.distribution)) {
+                ms = this.a + random.nextDouble() * (this.b - this.a);
+            } else if ("exponential".equals(this.distribution)) {
+                ms = -this.a * Math.log(1 - random.nextDouble());
+            } else if ("lognormal".equals(this.distribution)) {
+                ms = this.a * Math.exp(this.b * random.nextGaussian());
+            } else {
+                ms = this.a;
+            }
+            return Math.max(0, Math.round(ms));
+        }
+    }
+
+    // Stands for the real callback context in calls to the wrapped backend,
+    // and passes its results on, late or not at all.
+    private class FaultyCallbackContext extends CallbackContext {
+        private final CallbackContext cc;
+        private final String action;
+        private final Kind kind;
+        private final long start = System.nanoTime();
+
+        public FaultyCallbackContext(CallbackContext cc, String action, Kind kind) {
+            super(cc.getCallbackId(), plugin.webView);
+            this.cc = cc;
+            this.action = action;
+            this.kind = kind;
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult result) {
+            deliver(this, result);
+        }
+    }
+
+    private final OcfPlugin plugin;
+    private final OcfBackendInterface backend;
+    private final OcfMetrics metrics;
+
+    private final Latency latency;
+    private final double dropRate;
+    private final double duplicateRate;
+    private final double reorderRate;
+    private final int reorderDelay;
+    private final Random random;
+
+    // Results waiting for their delay to expire.
+    private final AtomicLong pending = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OcfBackendFaulty");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+
+    public OcfBackendFaulty(
+        OcfPlugin plugin, OcfBackendInterface backend, JSONObject options)
+        throws JSONException
+    {
+        final OcfBackendFaulty self = this;
+        JSONObject faults = options != null ? options.optJSONObject("faults") : null;
+        if (faults == null) {
+            faults = new JSONObject();
+        }
+
+        this.plugin = plugin;
+        this.backend = backend;
+        this.metrics = plugin.getMetrics();
+
+        this.latency = Latency.fromJSON(faults.optJSONObject("latency"));
+        this.dropRate = faults.optDouble("dropRate", 0);
+        this.duplicateRate = faults.optDouble("duplicateRate", 0);
+        this.reorderRate = faults.optDouble("reorderRate", 0);
+        this.reorderDelay = Math.max(0,
+            faults.optInt("reorderDelay", DEFAULT_REORDER_DELAY));
+        this.random = faults.has("seed") ?
+            new Random(faults.getLong("seed")) : new Random();
+
+        this.metrics.gauge("faults.pending", new OcfMetrics.Gauge() {
+            public long get() { return self.pending.get(); }
+        });
+    }
+
+    private void deliver(final FaultyCallbackContext fcc, final PluginResult result) {
+        long delay;
+        int copies = 1;
+
+        synchronized (this.random) {
+            delay = this.latency.next(this.random);
+
+            if (fcc.kind == Kind.COMPLETION && this.roll(this.dropRate)) {
+                this.metrics.counter("faults.dropped").incrementAndGet();
+                return;
+            } else if (fcc.kind == Kind.DISCOVERY && this.roll(this.duplicateRate)) {
+                this.metrics.counter("faults.duplicated").incrementAndGet();
+                copies = 2;
+            } else if (fcc.kind == Kind.NOTIFICATION && this.roll(this.reorderRate)) {
+                this.metrics.counter("faults.reordered").incrementAndGet();
+                delay += this.random.nextInt(this.reorderDelay + 1);
+            }
+        }
+
+        for (int i = 0; i < copies; i++) {
+            this.pending.incrementAndGet();
+            try {
+                this.scheduler.schedule(new Runnable() {
+                    public void run() {
+                        pending.decrementAndGet();
+                        metrics.histogram("delivered." + fcc.action).recordSince(fcc.start);
+                        fcc.cc.sendPluginResult(result);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // Closed: nobody is listening anymore.
+                this.pending.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean roll(double rate) {
+        return rate > 0 && this.random.nextDouble() < rate;
+    }
+
+    private CallbackContext wrap(CallbackContext cc, String action, Kind kind) {
+        return new FaultyCallbackContext(cc, action, kind);
+    }
+
+    public void close() {
+        this.backend.close();
+        this.scheduler.shutdownNow();
+        this.pending.set(0);
+    }
+
+    public void findResources(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        this.backend.findResources(args, this.wrap(cc, "findResources", Kind.DISCOVERY));
+    }
+
+    public boolean cancelDiscovery(String requestId) {
+        return this.backend.cancelDiscovery(requestId);
+    }
+
+    public void findDevices(CallbackContext cc) {
+        this.backend.findDevices(this.wrap(cc, "findDevices", Kind.DISCOVERY));
+    }
+
+    public void updateResource(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        this.backend.updateResource(args, this.wrap(cc, "updateResource", Kind.COMPLETION));
+    }
+
+    public void updateResources(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        this.backend.updateResources(args, this.wrap(cc, "updateResources", Kind.COMPLETION));
+    }
+
+    public int getResourceUpdates(OcfWriter writer) throws JSONException {
+        return this.backend.getResourceUpdates(writer);
+    }
+
+    public JSONObject configureResourceUpdates(JSONObject options)
+        throws JSONException
+    {
+        return this.backend.configureResourceUpdates(options);
+    }
+
+    public void subscribeResourceUpdates(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        this.backend.subscribeResourceUpdates(args,
+            this.wrap(cc, "subscribeResourceUpdates", Kind.NOTIFICATION));
+    }
+
+    public void unsubscribeResourceUpdates() {
+        this.backend.unsubscribeResourceUpdates();
+    }
+
+    public JSONObject getResourceProperties(String key) throws JSONException {
+        return this.backend.getResourceProperties(key);
+    }
+
+    public void getResourcesProperties(JSONObject options, OcfWriter writer)
+        throws JSONException
+    {
+        this.backend.getResourcesProperties(options, writer);
+    }
+
+    public boolean observeResource(String key) {
+        return this.backend.observeResource(key);
+    }
+
+    public void unobserveResource(String key) {
+        this.backend.unobserveResource(key);
+    }
+
+    public JSONObject configureObservations(JSONObject options)
+        throws JSONException
+    {
+        return this.backend.configureObservations(options);
+    }
+}
@@ -13,11 +13,29 @@ import org.json.JSONObject;
 
 
 public interface OcfBackendInterface {
+    // Called when the backend is replaced or the plugin goes away.
+    public void close();
+
     public void findResources(JSONArray args, CallbackContext cc)
         throws JSONException;
+    // Returns whether `requestId` named a discovery still in progress.
+    public boolean cancelDiscovery(String requestId);
     public void findDevices(CallbackContext cc);
     public void updateResource(JSONArray args, CallbackContext cc)
         throws JSONException;
-    public JSONArray getResourceUpdates() throws JSONException;
+    public void updateResources(JSONArray args, CallbackContext cc)
+        throws JSONException;
+    public int getResourceUpdates(OcfWriter writer) throws JSONException;
+    public JSONObject configureResourceUpdates(JSONObject options)
+        throws JSONException;
+    public void subscribeResourceUpdates(JSONArray args, CallbackContext cc)
+        throws JSONException;
+    public void unsubscribeResourceUpdates();
     public JSONObject getResourceProperties(String key) throws JSONException;
+    public void getResourcesProperties(JSONObject options, OcfWriter writer)
+        throws JSONException;
+    public boolean observeResource(String key);
+    public void unobserveResource(String key);
+    public JSONObject configureObservations(JSONObject options)
+        throws JSONException;
 }
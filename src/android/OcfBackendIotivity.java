@@ -1,12 +1,15 @@
 package com.intel.cordova.plugin.ocf;
 
 // Java
+import java.io.File;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 // Cordova
 import org.apache.cordova.CallbackContext;
@@ -37,54 +40,88 @@ import org.json.JSONObject;
 
 public class OcfBackendIotivity
     implements OcfBackendInterface,
-               OcPlatform.OnDeviceFoundListener,
-               OcPlatform.OnResourceFoundListener,
-               OcResource.OnGetListener,
-               OcResource.OnPutListener,
                OcResource.OnObserveListener
 {
-    // The callback contexts are stored so we're able to provide data to the
-    // frontend in an asynchronous and unsolicited fashion.
-    private CallbackContext findDevicesCallbackContext;
-    private CallbackContext findResourcesCallbackContext;
-
     private static final String OC_RSRVD_DEVICE_ID = "di";
     private static final String OC_RSRVD_DEVICE_NAME = "n";
     private static final String OC_RSRVD_SPEC_VERSION = "lcv";
     private static final String OC_RSRVD_DATA_MODEL_VERSION = "dmv";
 
+    private static final int GET_TIMEOUT = 5000;
+    private static final int PUT_TIMEOUT = 5000;
+
     private OcfPlugin plugin;
+    private OcfMetrics metrics;
+
+    // We keep a registry of all seen resources, so that they can be
+    // reference counted by the Iotivity JNI backend properly and we don't
+    // incur in memory leaks or corruptions. Each entry also holds the OCF
+    // resource, so we don't have to generate a pair each time we need it,
+    // and whether we are observing it, so we don't have multiple parallel
+    // observations on the same resource.
+    private OcfResourceRegistry registry = new OcfResourceRegistry();
+
+    // Native resources constructed to update resources that aren't in the
+    // registry, reused by later updates.
+    private OcfNativeHandleCache nativeHandles = new OcfNativeHandleCache();
 
-    // We keep a list of all seen resources, so that they can be reference
-    // counted by the Iotivity JNI backend properly and we don't incur in
-    // memory leaks or corruptions.
-    private List<OcResource> seenResources = new ArrayList<OcResource>();
+    // We keep a bounded queue of resource updates, which are the result of
+    // observations, that then the frontend will consume via pollig or via the
+    // update stream, if it subscribed to one.
+    private OcfResourceUpdateQueue resourceUpdates = new OcfResourceUpdateQueue();
+    private volatile OcfResourceUpdateStream updateStream;
 
-    // We keep a list of resources that we are observing so we don't have
-    // multiple parallel observations on the same resource.
-    private List<String> observedResources = new ArrayList<String>();
+    // Resources whose initial GET has completed, in order, so the frontend
+    // can fetch the properties of all newly ready resources in one go.
+    private OcfResourceReadyLog readyResources = new OcfResourceReadyLog();
 
-    // We keep a map of native resources to OCF resources so we don't have to
-    // generate a pair each time we need it (it's expensive because that
-    // will need to do a `get` on the native resource, which involves spawning
-    // a new thread and waiting around for tha to complete).
-    private Map<OcResource, OcfResource> nativeToOcfResourceMap =
-        new HashMap<OcResource, OcfResource>();
+    // Resources and devices seen in previous runs, served as "stale" until
+    // live discovery finds them again.
+    private OcfDiscoveryCache discoveryCache;
 
-    // We keep a list of resource updates, which are the result of
-    // observations, that then the frontend will consume via pollig.
-    private List<Map<OcfResource, OcfResourceRepresentation> > resourceUpdates =
-        new ArrayList<Map<OcfResource, OcfResourceRepresentation> >();
+    // Every `resource.get` and `resource.put` call gets its own completion
+    // handle, which is completed by its own listener or by a timeout.
+    private OcfRequestCorrelator requests;
 
-    // We keep track of the completion status of the `resource.get` and
-    // `resource.put` calls, because we wait on them.
-    private Map<String, Boolean> resourceGetFinished = new HashMap<String, Boolean>();
-    private Map<String, Boolean> resourcePutFinished = new HashMap<String, Boolean>();
+    // Starts and cancels observations, within the app's limits.
+    private OcfObservationManager observations;
+
+    // Throttles and deadbands observe notifications before they are queued.
+    private OcfNotificationFilter notifications;
+
+    // Evicts resources that have left the network, if configured with the
+    // `liveness` backend option.
+    private OcfLivenessTracker liveness;
+
+    // The `findResources` calls in progress, each with its own callback, so
+    // we're able to provide data to the frontend in an asynchronous and
+    // unsolicited fashion.
+    private OcfDiscoverySessions discoveries;
 
 
     // Constructor
-    public OcfBackendIotivity(OcfPlugin plugin) {
+    public OcfBackendIotivity(OcfPlugin plugin, JSONObject options)
+        throws JSONException
+    {
+        final OcfBackendIotivity self = this;
+
         this.plugin = plugin;
+        this.metrics = plugin.getMetrics();
+        this.requests = new OcfRequestCorrelator(this.metrics);
+        this.discoveries = new OcfDiscoverySessions(this.metrics);
+        this.resourceUpdates.setLatencyHistogram(this.metrics.histogram("observe"));
+        this.observations = new OcfObservationManager(this.createObserver());
+        this.notifications = new OcfNotificationFilter(
+            new OcfNotificationFilter.Sink() {
+                public void deliver(OcfResource resource, OcfResourceRepresentation repr) {
+                    self.queueResourceUpdate(resource, repr);
+                }
+            }, this.metrics);
+        this.liveness = new OcfLivenessTracker(
+            OcfLivenessTracker.Config.fromJSON(
+                options != null ? options.optJSONObject("liveness") : null),
+            this.createLivenessListener(),
+            this.metrics);
 
         PlatformConfig platformConfig = new PlatformConfig(
             plugin.cordova.getActivity().getApplicationContext(),
@@ -95,6 +132,152 @@ public class OcfBackendIotivity
             QualityOfService.LOW
         );
         OcPlatform.Configure(platformConfig);
+
+        this.discoveryCache = new OcfDiscoveryCache(new File(
+            plugin.cordova.getActivity().getApplicationContext().getFilesDir(),
+            OcfDiscoveryCache.FILE_NAME));
+        this.discoveryCache.load();
+
+        this.registerGauges();
+    }
+
+    private OcfObservationManager.Observer createObserver() {
+        final OcfBackendIotivity self = this;
+
+        return new OcfObservationManager.Observer() {
+            public boolean startObserving(String key) {
+                OcfResourceRegistry.Entry entry = self.registry.get(key);
+                if (entry == null || !entry.getNativeResource().isObservable()) {
+                    return false;
+                }
+
+                try {
+                    Log.d("CordovaPluginOCF", "Observing resource: " + key);
+                    entry.getNativeResource().observe(
+                        ObserveType.OBSERVE, new HashMap<String, String>(), self);
+                    entry.setObserved(true);
+                    return true;
+                } catch (OcException ex) {
+                    Log.e("CordovaPluginOCF", "Unable to observe resource: " + key);
+                    return false;
+                }
+            }
+
+            public void stopObserving(String key) {
+                OcfResourceRegistry.Entry entry = self.registry.get(key);
+                if (entry == null) {
+                    return;
+                }
+
+                // Notifications already on their way are ignored from now on.
+                entry.setObserved(false);
+                self.notifications.remove(key);
+                try {
+                    Log.d("CordovaPluginOCF", "Cancelling observation: " + key);
+                    entry.getNativeResource().cancelObserve();
+                } catch (OcException ex) {
+                    Log.e("CordovaPluginOCF", "Unable to cancel observation: " + key);
+                }
+            }
+        };
+    }
+
+    private OcfLivenessTracker.Listener createLivenessListener() {
+        final OcfBackendIotivity self = this;
+
+        return new OcfLivenessTracker.Listener() {
+            public void onResourceIdle(final String key) {
+                OcfResourceRegistry.Entry entry = self.registry.get(key);
+                if (entry == null) {
+                    self.liveness.forget(key);
+                    return;
+                }
+
+                // A successful GET counts as a sign of life by itself.
+                boolean issued = self.getNative(
+                    OcfExecutor.Priority.PREFETCH, entry.getNativeResource(),
+                    new OcfPendingRequest<OcRepresentation>() {
+                        protected void onCompleted(OcRepresentation repr) {}
+
+                        protected void onFailed(String reason) {
+                            self.liveness.lost(key);
+                        }
+                    });
+                if (!issued) {
+                    // Too busy to probe: try again after another ttl.
+                    self.liveness.seen(key);
+                }
+            }
+
+            public void onResourceLost(String key) {
+                self.evictResource(key);
+            }
+        };
+    }
+
+    // Forgets everything about `key`, releasing its native resource, and
+    // tells the frontend.
+    private void evictResource(String key) {
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        // The observation is cancelled while the entry can still be found.
+        this.observations.unobserve(key);
+        this.notifications.remove(key);
+        this.resourceUpdates.forget(key);
+        this.discoveryCache.remove(key);
+        this.readyResources.remove(key);
+        this.registry.remove(key);
+        this.nativeHandles.remove(key);
+
+        this.discoveries.reportLost(entry.getOcfResource().getId());
+        OcfResourceKey resourceKey = entry.getOcfResource().getId().getKey();
+        if (resourceKey != null) {
+            OcfResourceKey.release(resourceKey);
+        }
+    }
+
+    private void registerGauges() {
+        final OcfBackendIotivity self = this;
+
+        this.metrics.gauge("updates.queued", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.size(); }
+        });
+        this.metrics.gauge("updates.dropped", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.getDroppedCount(); }
+        });
+        this.metrics.gauge("updates.coalesced", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.getCoalescedCount(); }
+        });
+        this.metrics.gauge("registry.resources", new OcfMetrics.Gauge() {
+            public long get() { return self.registry.size(); }
+        });
+        this.metrics.gauge("registry.ready", new OcfMetrics.Gauge() {
+            public long get() { return self.readyResources.size(); }
+        });
+        this.metrics.gauge("registry.keys", new OcfMetrics.Gauge() {
+            public long get() { return OcfResourceKey.size(); }
+        });
+        this.metrics.gauge("requests.inFlight", new OcfMetrics.Gauge() {
+            public long get() { return self.requests.getInFlightCount(); }
+        });
+        this.metrics.gauge("observations.active", new OcfMetrics.Gauge() {
+            public long get() { return self.observations.size(); }
+        });
+        this.metrics.gauge("liveness.tracked", new OcfMetrics.Gauge() {
+            public long get() { return self.liveness.size(); }
+        });
+        this.metrics.gauge("discovery.sessionsOpen", new OcfMetrics.Gauge() {
+            public long get() { return self.discoveries.size(); }
+        });
+        this.metrics.gauge("discoveryCache.entries", new OcfMetrics.Gauge() {
+            public long get() { return self.discoveryCache.size(); }
+        });
+        this.metrics.gauge("nativeHandles.cached", new OcfMetrics.Gauge() {
+            public long get() { return self.nativeHandles.size(); }
+        });
     }
 
 
@@ -105,10 +288,6 @@ public class OcfBackendIotivity
 
     private static OcResource resourceToNative(OcfResource ocfResource) {
         OcResource nativeResource = null;
-        String url = ocfResource.getId().getDeviceId();
-        String host = ocfResource.getId().getResourcePath();
-        ArrayList<String> resourceTypes = ocfResource.getResourceTypes();
-        ArrayList<String> interfaces = ocfResource.getInterfaces();
 
         try {
             nativeResource = OcPlatform.constructResourceObject(
@@ -131,73 +310,141 @@ public class OcfBackendIotivity
         OcRepresentation nativeRepr = new OcRepresentation();
         for (Map.Entry<String, Object> entry : repr.getProperties().entrySet())
         {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            String type = value.getClass().getName();
-            String stringValue = "" + value;
-
-            // Parse value and support only primitive types for now.
             try {
-                boolean done = false;
-
-                if (stringValue.toLowerCase().equals("true")) {
-                    nativeRepr.setValue(key, true);
-                    done = true;
-                } else if (stringValue.toLowerCase().equals("false")) {
-                    nativeRepr.setValue(key, false);
-                    done = true;
-                } else {
-                    Log.w("CordovaPluginOCF", "Value is not an bool");
-                }
-
-                try {
-                    int i = Integer.parseInt(stringValue);
-                    nativeRepr.setValue(key, i);
-                    done = true;
-                } catch(NumberFormatException ex) {
-                    Log.w("CordovaPluginOCF", "Value is not an integer");
-                }
+                OcfBackendIotivity.setNativeValue(
+                    nativeRepr, entry.getKey(), entry.getValue());
+            } catch (OcException ex) {
+                Log.e("CordovaPluginOCF", ex.toString());
+            } catch (JSONException ex) {
+                Log.e("CordovaPluginOCF", ex.toString());
+            }
+        }
 
-                try {
-                    double d = Double.parseDouble(stringValue);
-                    nativeRepr.setValue(key, d);
-                    done = true;
-                } catch(NumberFormatException ex) {
-                    Log.w("CordovaPluginOCF", "Value is not a double");
-                }
+        return nativeRepr;
+    }
 
-                if (value.getClass().getCanonicalName().equals("org.json.JSONArray")) {
-                    JSONArray arr = (JSONArray) value;
-                    try {
-                        int[] ia = new int[arr.length()];
-                        for (int i = 0; i < arr.length(); i++) {
-                            ia[i] = arr.getInt(i);
-                        }
+    private static OcRepresentation representationToNative(JSONObject obj)
+        throws OcException, JSONException
+    {
+        OcRepresentation nativeRepr = new OcRepresentation();
+        Iterator<String> it = obj.keys();
+        while (it.hasNext()) {
+            String key = it.next();
+            OcfBackendIotivity.setNativeValue(nativeRepr, key, obj.get(key));
+        }
 
-                        nativeRepr.setValue(key, ia);
-                        done = true;
-                    } catch(JSONException e) {
-                        Log.w("CordovaPluginOCF", "Value is not an int[]");
-                    }
-                } else {
-                    Log.w("CordovaPluginOCF", "Value is not an array");
-                }
+        return nativeRepr;
+    }
 
-                if (!done) {
-                    nativeRepr.setValue(key, stringValue);
-                }
-            } catch(OcException ex) {
-                Log.e("CordovaPluginOCF", ex.toString());
+    // Sets `value` into `nativeRepr`, dispatching on the Java type that
+    // `org.json` (or the native side, for values that came from a GET)
+    // produced, so each key is written exactly once.
+    private static void setNativeValue(
+        OcRepresentation nativeRepr, String key, Object value)
+        throws OcException, JSONException
+    {
+        if (value == null || value == JSONObject.NULL) {
+            nativeRepr.setNull(key);
+        } else if (value instanceof Boolean) {
+            nativeRepr.setValue(key, ((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            nativeRepr.setValue(key, ((Number) value).intValue());
+        } else if (value instanceof Long) {
+            long l = ((Long) value).longValue();
+            if (l == (int) l) {
+                nativeRepr.setValue(key, (int) l);
+            } else {
+                nativeRepr.setValue(key, (double) l);
             }
+        } else if (value instanceof Number) {
+            nativeRepr.setValue(key, ((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            nativeRepr.setValue(key, (String) value);
+        } else if (value instanceof JSONObject) {
+            nativeRepr.setValue(key, OcfBackendIotivity.representationToNative((JSONObject) value));
+        } else if (value instanceof JSONArray) {
+            OcfBackendIotivity.setNativeArray(nativeRepr, key, (JSONArray) value);
+        } else if (value instanceof OcRepresentation) {
+            nativeRepr.setValue(key, (OcRepresentation) value);
+        } else if (value instanceof int[]) {
+            nativeRepr.setValue(key, (int[]) value);
+        } else if (value instanceof double[]) {
+            nativeRepr.setValue(key, (double[]) value);
+        } else if (value instanceof boolean[]) {
+            nativeRepr.setValue(key, (boolean[]) value);
+        } else if (value instanceof String[]) {
+            nativeRepr.setValue(key, (String[]) value);
+        } else if (value instanceof OcRepresentation[]) {
+            nativeRepr.setValue(key, (OcRepresentation[]) value);
+        } else {
+            Log.w("CordovaPluginOCF", "Unsupported type for " + key + ": " +
+                  value.getClass().getName());
+            nativeRepr.setValue(key, value.toString());
         }
+    }
 
-        return nativeRepr;
+    // Arrays are typed after their elements: all integers make an int[], any
+    // other number promotes it to double[], and so on. Mixed arrays can't be
+    // represented natively, so they are sent as String[].
+    private static void setNativeArray(
+        OcRepresentation nativeRepr, String key, JSONArray arr)
+        throws OcException, JSONException
+    {
+        final int length = arr.length();
+        boolean ints = true, numbers = true, bools = true, strings = true, objects = true;
+
+        for (int i = 0; i < length; i++) {
+            Object o = arr.get(i);
+            boolean isInt = o instanceof Integer || o instanceof Short || o instanceof Byte ||
+                (o instanceof Long && ((Long) o).longValue() == ((Long) o).intValue());
+
+            ints &= isInt;
+            numbers &= o instanceof Number;
+            bools &= o instanceof Boolean;
+            strings &= o instanceof String;
+            objects &= o instanceof JSONObject;
+        }
+
+        if (ints) {
+            int[] ia = new int[length];
+            for (int i = 0; i < length; i++) {
+                ia[i] = arr.getInt(i);
+            }
+            nativeRepr.setValue(key, ia);
+        } else if (numbers) {
+            double[] da = new double[length];
+            for (int i = 0; i < length; i++) {
+                da[i] = arr.getDouble(i);
+            }
+            nativeRepr.setValue(key, da);
+        } else if (bools) {
+            boolean[] ba = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                ba[i] = arr.getBoolean(i);
+            }
+            nativeRepr.setValue(key, ba);
+        } else if (objects) {
+            OcRepresentation[] ra = new OcRepresentation[length];
+            for (int i = 0; i < length; i++) {
+                ra[i] = OcfBackendIotivity.representationToNative(arr.getJSONObject(i));
+            }
+            nativeRepr.setValue(key, ra);
+        } else {
+            if (!strings) {
+                Log.w("CordovaPluginOCF", "Mixed array for " + key + ", sending strings");
+            }
+            String[] sa = new String[length];
+            for (int i = 0; i < length; i++) {
+                sa[i] = arr.getString(i);
+            }
+            nativeRepr.setValue(key, sa);
+        }
     }
 
     private static OcfResourceRepresentation representationFromNative(
-        OcRepresentation nativeRepr)
+        OcRepresentation nativeRepr, OcfResourceSchema schema)
     {
-        OcfResourceRepresentation repr = new OcfResourceRepresentation();
+        OcfResourceRepresentation repr = new OcfResourceRepresentation(schema);
         Map<String, Object> values = nativeRepr.getValues();
         for (Map.Entry<String, Object> entry: values.entrySet()) {
             repr.setValue(entry.getKey(), entry.getValue());
@@ -209,150 +456,202 @@ public class OcfBackendIotivity
     // Member utils
 
     private String getResourceKey(OcResource resource) {
-        String host = resource.getHost();
-        String resourcePath = resource.getUri();
-        return host + resourcePath;
+        return OcfResourceRegistry.getKey(resource.getHost(), resource.getUri());
     }
 
     private String getResourceKey(OcRepresentation repr) {
-        String host = repr.getHost();
-        String resourcePath = repr.getUri();
-        return host + resourcePath;
-    }
-
-    private OcResource getSeenResourceByKey(String key) {
-        for (OcResource resource: this.seenResources) {
-            String resourceKey = this.getResourceKey(resource);
-            if (resourceKey.equals(key)) {
-                return resource;
-            }
-        }
-
-        return null;
-    }
-
-    private OcfResource getOcfResourceFromNative(OcResource nativeResource) {
-        return this.nativeToOcfResourceMap.get(nativeResource);
+        return OcfResourceRegistry.getKey(repr.getHost(), repr.getUri());
     }
 
-    private OcfResource produceOcfResourceFromNative(final OcResource nativeResource) {
-        OcfResource ocfResource = null;
-
-        ocfResource = this.getOcfResourceFromNative(nativeResource);
-        if (ocfResource == null) {
+    private OcfResourceRegistry.Entry registerResource(
+        final String key, final OcResource nativeResource)
+    {
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
+        if (entry == null) {
             final OcfBackendIotivity self = this;
 
-            final String host = nativeResource.getHost();
-            final String uri = nativeResource.getUri();
-            final String key = this.getResourceKey(nativeResource);
-
-            ocfResource = new OcfResource(host, uri);
+            OcfResource ocfResource = new OcfResource(
+                nativeResource.getHost(), nativeResource.getUri());
             ocfResource.setResourceTypes(new ArrayList<String> (nativeResource.getResourceTypes()));
             ocfResource.setInterfaces(new ArrayList<String> (nativeResource.getResourceInterfaces()));
             ocfResource.setObservable(nativeResource.isObservable());
 
-            this.nativeToOcfResourceMap.put(nativeResource, ocfResource);
+            entry = this.registry.putIfAbsent(
+                new OcfResourceRegistry.Entry(key, nativeResource, ocfResource));
+            entry.getOcfResource().getId().register();
+            // Updates use the discovered resource from now on.
+            this.nativeHandles.remove(key);
+
+            // Get all poperties. This is a background prefetch, so it waits
+            // behind user initiated requests. When even the queue is full, it
+            // is dropped: the app can still read the resource.
+            final OcfResource pendingResource = entry.getOcfResource();
+            boolean issued = this.getNative(
+                OcfExecutor.Priority.PREFETCH, nativeResource,
+                new OcfPendingRequest<OcRepresentation>() {
+                    protected void onCompleted(OcRepresentation repr) {
+                        self.onInitialGetCompleted(key, pendingResource, repr);
+                    }
 
-            // Get all poperties
-            this.plugin.cordova.getThreadPool().execute(new Runnable() {
-                public void run() {
-                    int elapsed = 0;
-                    final int timeout = 5000;
-                    final int sleepTime = 10;
+                    protected void onFailed(String reason) {
+                        Log.d("CordovaPluginOCF", "GET failed: " + key + ": " + reason);
+                    }
+                });
+            if (!issued) {
+                Log.w("CordovaPluginOCF", "Request queue full, dropping prefetch of " + key);
+                this.metrics.counter("prefetch.dropped").incrementAndGet();
+            }
+        }
 
-                    self.resourceGetFinished.put(key, false);
+        return entry;
+    }
 
-                    try {
-                        nativeResource.get(new HashMap<String, String>(), self);
-                        while(self.resourceGetFinished.get(key) == false && elapsed <= timeout) {
-                            Thread.sleep(sleepTime);
-                            elapsed += sleepTime;
+    // Issues a GET whose result will complete `request`, once the executor
+    // has a slot for it. Returns false, leaving `request` alone, if there
+    // is no room to wait for one.
+    private boolean getNative(
+        OcfExecutor.Priority priority, final OcResource nativeResource,
+        final OcfPendingRequest<OcRepresentation> request)
+    {
+        final OcfBackendIotivity self = this;
+
+        return this.issue(priority, request, "get", GET_TIMEOUT, new Runnable() {
+            public void run() {
+                try {
+                    nativeResource.get(new HashMap<String, String>(), new OcResource.OnGetListener() {
+                        @Override
+                        public void onGetCompleted(
+                            java.util.List<OcHeaderOption> headerOptionList,
+                            OcRepresentation ocRepresentation)
+                        {
+                            self.liveness.seen(self.getResourceKey(nativeResource));
+                            request.complete(ocRepresentation);
                         }
 
-                        if (elapsed > timeout) {
-                            self.resourceGetFinished.put(key, true);
-                            Log.d("CordovaPluginOCF", "GET timeout reached");
+                        @Override
+                        public void onGetFailed(java.lang.Throwable ex) {
+                            request.fail(ex.toString());
                         }
+                    });
+                } catch (OcException ex) {
+                    Log.e("CordovaPluginOCF", ex.toString());
+                    request.fail(ex.toString());
+                }
+            }
+        });
+    }
 
-                    } catch (OcException ex) {
-                        Log.e("CordovaPluginOCF", ex.toString());
-                        self.resourceGetFinished.put(key, true);
-                    } catch (InterruptedException ex) {
-                        Log.e("CordovaPluginOCF", ex.toString());
-                        self.resourceGetFinished.put(key, true);
+    // Issues a PUT whose result will complete `request`, as `getNative`.
+    private boolean putNative(
+        OcfExecutor.Priority priority, final OcResource nativeResource,
+        final OcRepresentation nativeRepr,
+        final OcfPendingRequest<OcRepresentation> request)
+    {
+        final OcfBackendIotivity self = this;
+
+        return this.issue(priority, request, "put", PUT_TIMEOUT, new Runnable() {
+            public void run() {
+                try {
+                    nativeResource.put(nativeRepr, new HashMap<String, String>(), new OcResource.OnPutListener() {
+                        @Override
+                        public void onPutCompleted(
+                            java.util.List<OcHeaderOption> headerOptionList,
+                            OcRepresentation ocRepresentation)
+                        {
+                            self.liveness.seen(self.getResourceKey(nativeResource));
+                            request.complete(ocRepresentation);
+                        }
+
+                        @Override
+                        public void onPutFailed(java.lang.Throwable ex) {
+                            request.fail(ex.toString());
+                        }
+                    });
+                } catch (OcException ex) {
+                    Log.e("CordovaPluginOCF", ex.toString());
+                    request.fail(ex.toString());
+                }
+            }
+        });
+    }
+
+    // Runs `send` once the executor has a request slot, tracking `request`
+    // from then on, so that its timeout only counts time on the network.
+    // The slot is given back when `request` is done.
+    private boolean issue(
+        OcfExecutor.Priority priority, final OcfPendingRequest<?> request,
+        final String operation, final int timeout, final Runnable send)
+    {
+        final OcfExecutor executor = this.plugin.getExecutor();
+        final OcfRequestCorrelator requests = this.requests;
+
+        try {
+            executor.request(priority, new Runnable() {
+                public void run() {
+                    requests.track(request, operation, timeout, new Runnable() {
+                        public void run() {
+                            executor.requestDone();
+                        }
+                    });
+                    // A closed backend fails its requests right away.
+                    if (!request.isDone()) {
+                        send.run();
                     }
                 }
             });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
         }
-
-        return ocfResource;
     }
 
     private void addResourceUpdate(OcfResource resource, OcRepresentation repr)
     {
-        Map<OcfResource, OcfResourceRepresentation> update =
-            new HashMap<OcfResource, OcfResourceRepresentation>();
+        this.notifications.offer(resource, OcfBackendIotivity.representationFromNative(
+            repr, resource.getProperties().getSchema()));
+    }
 
-        update.put(resource, this.representationFromNative(repr));
-        this.resourceUpdates.add(update);
+    private void queueResourceUpdate(
+        OcfResource resource, OcfResourceRepresentation repr)
+    {
+        boolean queued = this.resourceUpdates.add(resource, repr);
+
+        OcfResourceUpdateStream stream = this.updateStream;
+        if (queued && stream != null) {
+            stream.notifyUpdate();
+        }
     }
 
 
-    // Listener callbacks for the resource objects
+    // Completion of the requests issued by this backend
 
-    @Override
-    public synchronized void onGetCompleted(
-        java.util.List<OcHeaderOption> headerOptionList,
-        OcRepresentation ocRepresentation)
+    private synchronized void onInitialGetCompleted(
+        String key, OcfResource ocfResource, OcRepresentation ocRepresentation)
     {
-        String key = this.getResourceKey(ocRepresentation);
-
         Log.d("CordovaPluginOCF", "onGetCompleted: " + key);
 
-        OcResource nativeResource = this.getSeenResourceByKey(key);
-        OcfResource ocfResource = this.getOcfResourceFromNative(nativeResource);
+        Map<String, Object> values = ocRepresentation.getValues();
+        for(Map.Entry<String, Object> entry: values.entrySet()) {
+            String reprKey = entry.getKey();
+            Object reprValue = entry.getValue();
+            ocfResource.setProperty(reprKey, reprValue);
+        }
 
-        if (ocfResource != null) {
-            Map<String, Object> values = ocRepresentation.getValues();
-            for(Map.Entry<String, Object> entry: values.entrySet()) {
-                String reprKey = entry.getKey();
-                Object reprValue = entry.getValue();
-                ocfResource.setProperty(reprKey, reprValue);
-            }
-            this.resourceGetFinished.put(key, true);
-        } else {
-            Log.e("CordovaPluginOCF", "onGetCompleted: unable to find resource");
+        // The resource may have been evicted while its GET was on its way.
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
+        if (entry == null || entry.getOcfResource() != ocfResource) {
+            return;
         }
-    }
 
-    @Override
-    public synchronized void onGetFailed(java.lang.Throwable ex) {
-        Log.e("CordovaPluginOCF", "onGetFailed");
-        // Note: the marking of the get as finished is actually performed in
-        // the `produceOcfResourceFromNative` method, as in this callback we
-        // have no context.
+        this.readyResources.add(key);
+        this.discoveryCache.putResource(ocfResource);
     }
 
-    @Override
-    public synchronized void onPutCompleted(
-        java.util.List<OcHeaderOption> headerOptionList,
-        OcRepresentation ocRepresentation)
-    {
-        Log.d("CordovaPluginOCF", "onPutCompleted");
-
-        String key = this.getResourceKey(ocRepresentation);
-        this.resourcePutFinished.put(key, true);
-    }
 
-    @Override
-    public synchronized void onPutFailed(java.lang.Throwable ex) {
-        Log.e("CordovaPluginOCF", "onPutFailed");
-        // Note: the marking of the get as finished is actually performed in
-        // the `updateResource` method, as in this callback we have no context.
-    }
+    // Listener callbacks for the resource objects
 
     @Override
-    public synchronized void onObserveCompleted(
+    public void onObserveCompleted(
            java.util.List<OcHeaderOption> headerOptionList,
            OcRepresentation ocRepresentation,
            int sequenceNumber)
@@ -360,22 +659,30 @@ public class OcfBackendIotivity
         Log.d("CordovaPluginOCF", "onObserveCompleted");
 
         String key = this.getResourceKey(ocRepresentation);
-        OcResource nativeResource = this.getSeenResourceByKey(key);
-        OcfResource ocfResource = this.getOcfResourceFromNative(nativeResource);
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
+        if (entry == null) {
+            Log.e("CordovaPluginOCF", "onObserveCompleted: unable to find resource");
+            return;
+        }
+        if (!entry.isObserved()) {
+            return;
+        }
+        this.liveness.seen(key);
 
-        this.addResourceUpdate(ocfResource, ocRepresentation);
+        this.metrics.counter("observe.notifications").incrementAndGet();
+        this.addResourceUpdate(entry.getOcfResource(), ocRepresentation);
     }
 
     @Override
     public synchronized void onObserveFailed(java.lang.Throwable ex) {
         Log.e("CordovaPluginOCF", "onObserveFailed");
+        this.metrics.counter("observe.errors").incrementAndGet();
     }
 
 
     // Listener callbacks for the platform object
 
-    @Override
-    public void onDeviceFound(final OcRepresentation repr) {
+    private void onDeviceFound(CallbackContext cc, final OcRepresentation repr) {
         OcfDevice device = new OcfDevice();
         try {
             device.setUuid((String) repr.getValue(OC_RSRVD_DEVICE_ID));
@@ -387,73 +694,106 @@ public class OcfBackendIotivity
             Log.e("CordovaPluginOCF", "Error reading OcRepresentation: " + ex.getMessage());
         }
 
-        OcfDeviceEvent ev = new OcfDeviceEvent(device);
+        this.metrics.counter("discovery.devices").incrementAndGet();
+        this.discoveryCache.putDevice(device);
+        this.sendDeviceEvent(cc, new OcfDeviceEvent(device));
+    }
+
+    private void sendDeviceEvent(CallbackContext cc, OcfDeviceEvent ev) {
         try {
-            PluginResult result = new PluginResult(PluginResult.Status.OK, ev.toJSON());
+            PluginResult result = OcfPluginResults.encode(
+                ev, OcfWriter.FORMAT_JSON, this.metrics, "findDevices");
             result.setKeepCallback(true);
-            this.findDevicesCallbackContext.sendPluginResult(result);
+            cc.sendPluginResult(result);
         } catch (JSONException ex) {
-            this.findDevicesCallbackContext.error(ex.getMessage());
+            cc.error(ex.getMessage());
         }
     }
 
-    @Override
-    public synchronized void onResourceFound(OcResource resource) {
-        String resourcePath = resource.getUri();
+    // All the discovery queries end up here, tagged with their session.
+    // Answers to completed sessions only count as signs of life.
+    private void onResourceFound(String sessionId, OcResource resource) {
         String key = this.getResourceKey(resource);
+        OcfDiscoverySessions.Session session = this.discoveries.get(sessionId);
 
-        if (resourcePath.equals("/oic/p") ||
-            resourcePath.equals("/oic/d") ||
-            resourcePath.equals("/oic/sec/doxm") ||
-            resourcePath.equals("/oic/sec/pstat"))
-        {
+        OcfResourceRegistry.Entry known = this.registry.get(key);
+        if (known != null) {
+            this.liveness.seen(key);
+            if (session != null) {
+                this.discoveries.report(session, known.getOcfResource());
+            }
             return;
         }
 
-        OcResource seenResource = this.getSeenResourceByKey(key);
-        if (seenResource != null) {
+        if (session == null || !session.getFilter().matches(
+                resource.getUri(),
+                resource.getResourceTypes(),
+                resource.getResourceInterfaces()))
+        {
             return;
         }
 
         Log.d("CordovaPluginOCF", "Found resource: " + key);
-        this.seenResources.add(resource);
-
-        if (resource.isObservable() && ! this.observedResources.contains(key)) {
-            try {
-                Log.d("CordovaPluginOCF", "Observing resource: " + key);
-                resource.observe(ObserveType.OBSERVE, new HashMap<String, String>(), this);
-                this.observedResources.add(key);
-            } catch (OcException e) {
-                Log.e("CordovaPluginOCF", "Unable to observe resoure");
+        OcfResourceRegistry.Entry entry = null;
+        synchronized (this) {
+            // Two discovery callbacks may race for the same resource: only
+            // the one that registers it goes on.
+            known = this.registry.get(key);
+            if (known == null) {
+                entry = this.registerResource(key, resource);
+                this.discoveryCache.putResource(entry.getOcfResource());
             }
         }
+        if (known != null) {
+            this.discoveries.report(session, known.getOcfResource());
+            return;
+        }
+        this.liveness.seen(key);
 
-        OcfResource ocfResource = this.produceOcfResourceFromNative(resource);
-        OcfResourceEvent ev = new OcfResourceEvent(ocfResource);
-
-        try {
-            PluginResult result = new PluginResult(PluginResult.Status.OK, ev.toJSON());
-            result.setKeepCallback(true);
-            this.findResourcesCallbackContext.sendPluginResult(result);
-        } catch (JSONException ex) {
-            this.findResourcesCallbackContext.error(ex.getMessage());
+        this.metrics.counter("discovery.resources").incrementAndGet();
+        for (String resourceType: entry.getOcfResource().getResourceTypes()) {
+            this.metrics.group("discovery.resourceTypes").increment(resourceType);
         }
+
+        this.observations.onResourceFound(key, resource.isObservable());
+
+        this.discoveries.report(session, entry.getOcfResource());
     }
 
-    public void onFindResourceFailed(Throwable t, String s) {
+    private void onFindResourceFailed(Throwable t, String s) {
         Log.d("CordovaPluginOCF", "onFindResourceFailed: " + t.toString());
     }
 
 
     // API
 
-    public void findDevices(CallbackContext cc) {
-        this.findDevicesCallbackContext = cc;
+    public void close() {
+        this.unsubscribeResourceUpdates();
+        this.observations.clear();
+        this.notifications.close();
+        this.liveness.close();
+        this.discoveries.close();
+        this.requests.close();
+        this.discoveryCache.close();
+    }
+
+    public void findDevices(final CallbackContext cc) {
+        final OcfBackendIotivity self = this;
+
+        for (OcfDevice device: this.discoveryCache.getDevices()) {
+            this.sendDeviceEvent(cc, new OcfDeviceEvent(device, true));
+        }
+
         try {
             OcPlatform.getDeviceInfo(
-                "", "/oic/d", EnumSet.of(OcConnectivityType.CT_DEFAULT), this);
+                "", "/oic/d", EnumSet.of(OcConnectivityType.CT_DEFAULT),
+                new OcPlatform.OnDeviceFoundListener() {
+                    public void onDeviceFound(OcRepresentation repr) {
+                        self.onDeviceFound(cc, repr);
+                    }
+                });
         } catch (OcException ex) {
-            this.findDevicesCallbackContext.error(ex.getMessage());
+            cc.error(ex.getMessage());
         }
     }
 
@@ -461,93 +801,262 @@ public class OcfBackendIotivity
     public void findResources(JSONArray args, CallbackContext cc)
         throws JSONException
     {
-        String deviceId = args.getJSONObject(0).optString("deviceId");
-        String resourceType = args.getJSONObject(0).optString("resourceType");
-        String queryUrl = OcPlatform.WELL_KNOWN_QUERY;
-
-        if (resourceType != null && resourceType.length() > 0) {
-            queryUrl += "?rt=" + resourceType;
+        final OcfBackendIotivity self = this;
+        final OcfDiscoverySessions.Session session =
+            this.discoveries.open(args.getJSONObject(0), cc);
+
+        // Serve what we knew from previous runs while the live discovery
+        // below refreshes it.
+        for (OcfResource cached: this.discoveryCache.getResources()) {
+            if (this.registry.get(cached.getId().getUniqueKey()) == null) {
+                this.discoveries.reportStale(session, cached);
+            }
         }
 
-        this.findResourcesCallbackContext = cc;
+        // A list of hosts gets unicast queries, a few hosts at a time.
+        if (session.isFanOut()) {
+            this.discoveries.start(session, new OcfDiscoverySessions.Prober() {
+                public void probe(OcfDiscoverySessions.Session session, String host) {
+                    try {
+                        self.sendDiscoveryQueries(session, host);
+                    } catch (OcException ex) {
+                        self.discoveries.hostFailed(session, host, ex.getMessage());
+                    }
+                }
+            });
+            return;
+        }
 
         try {
+            this.sendDiscoveryQueries(session, session.getDeviceId());
+        } catch (OcException ex) {
+            cc.error(ex.getMessage());
+        }
+    }
+
+    // The queries run concurrently, with the queries of other sessions, each
+    // answer going through `onResourceFound`, where duplicates are dropped.
+    private void sendDiscoveryQueries(
+        final OcfDiscoverySessions.Session session, final String host)
+        throws OcException
+    {
+        final OcfBackendIotivity self = this;
+        OcPlatform.OnResourceFoundListener listener =
+            new OcPlatform.OnResourceFoundListener() {
+                public void onResourceFound(OcResource resource) {
+                    self.onResourceFound(session.getId(), resource);
+                    if (session.isFanOut()) {
+                        self.discoveries.hostAnswered(session, host);
+                    }
+                }
+
+                public void onFindResourceFailed(Throwable t, String s) {
+                    self.onFindResourceFailed(t, s);
+                    if (session.isFanOut()) {
+                        self.discoveries.hostFailed(session, host, t.toString());
+                    }
+                }
+            };
+
+        for (String queryUrl:
+             session.getFilter().getQueries(OcPlatform.WELL_KNOWN_QUERY))
+        {
             OcPlatform.findResource(
-                deviceId,
+                host,
                 queryUrl,
                 EnumSet.of(OcConnectivityType.CT_DEFAULT),
-                this);
-        } catch (OcException ex) {
-            this.findResourcesCallbackContext.error(ex.getMessage());
+                listener);
         }
     }
 
-    public void updateResource(JSONArray args, CallbackContext cc)
+    public boolean cancelDiscovery(String requestId) {
+        return this.discoveries.cancel(requestId);
+    }
+
+    public void updateResource(JSONArray args, final CallbackContext cc)
         throws JSONException
     {
-        int elapsed = 0;
-        final int timeout = 5000;
-        final int sleepTime = 100;
-
-        OcfResource ocfResource = OcfResource.fromJSON(args.getJSONObject(0));
-        OcResource nativeResource = OcfBackendIotivity.resourceToNative(ocfResource);
-        OcRepresentation nativeRepr = OcfBackendIotivity.representationToNative(
-            ocfResource.getProperties());
-        String key = this.getResourceKey(nativeResource);
+        final OcfBackendIotivity self = this;
+        final OcfResource ocfResource = OcfResource.fromJSON(args.getJSONObject(0));
+        final String key = ocfResource.getId().getUniqueKey();
 
         Log.d("CordovaPluginOCF", "Updating resource: " +  ocfResource.toJSON().toString());
+        this.observations.touch(key);
 
-        try {
-            this.resourcePutFinished.put(key, false);
-            nativeResource.put(nativeRepr, new HashMap<String, String>(), this);
-            while(this.resourcePutFinished.get(key) == false && elapsed <= timeout) {
-                Thread.sleep(sleepTime);
-                elapsed += sleepTime;
+        this.putResource(ocfResource, new OcfPendingRequest<OcRepresentation>() {
+            protected void onCompleted(OcRepresentation repr) {
+                Log.d("CordovaPluginOCF", "onPutCompleted: " + key);
+                OcfResourceUpdateEvent ev = new OcfResourceUpdateEvent(ocfResource);
+                try {
+                    cc.sendPluginResult(OcfPluginResults.encode(
+                        ev, OcfWriter.FORMAT_JSON, self.metrics, "updateResource"));
+                } catch (JSONException ex) {
+                    cc.error(ex.getMessage());
+                }
             }
 
-            if (elapsed > timeout) {
-                this.resourcePutFinished.put(key, true);
+            protected void onFailed(String reason) {
+                Log.e("CordovaPluginOCF", "PUT failed: " + key + ": " + reason);
+                cc.error("PUT failed: " + reason);
             }
-        } catch (OcException ex) {
-            Log.e("CordovaPluginOCF", ex.toString());
-            this.resourcePutFinished.put(key, true);
-        } catch (InterruptedException ex) {
-            Log.e("CordovaPluginOCF", ex.toString());
-            this.resourcePutFinished.put(key, true);
+        });
+    }
+
+    public void updateResources(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        final OcfBackendIotivity self = this;
+
+        new OcfUpdateBatch(args.getJSONArray(0), args.optJSONObject(1), cc) {
+            protected void issue(final int index, OcfResource resource) {
+                final OcfUpdateBatch batch = this;
+                self.observations.touch(resource.getId().getUniqueKey());
+                self.putResource(resource, new OcfPendingRequest<OcRepresentation>() {
+                    protected void onCompleted(OcRepresentation repr) {
+                        batch.succeed(index);
+                    }
+
+                    protected void onFailed(String reason) {
+                        batch.fail(index, reason);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    // PUTs the properties of `ocfResource`; the outcome completes `request`.
+    private void putResource(
+        OcfResource ocfResource, OcfPendingRequest<OcRepresentation> request)
+    {
+        String key = ocfResource.getId().getUniqueKey();
+        OcResource nativeResource = this.getNativeHandle(key, ocfResource);
+        if (nativeResource == null) {
+            request.fail("unable to construct resource " + key);
+            return;
         }
 
-        cc.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+        OcRepresentation nativeRepr = OcfBackendIotivity.representationToNative(
+            ocfResource.getProperties());
+        if (!this.putNative(OcfExecutor.Priority.USER, nativeResource, nativeRepr, request)) {
+            request.fail("too many pending operations");
+        }
     }
 
-    public JSONArray getResourceUpdates() throws JSONException {
-        JSONArray updates = new JSONArray();
+    // The native resource to send requests for `ocfResource` to: preferably
+    // the discovered one, which has the right connectivity type, otherwise
+    // one constructed once and kept in `nativeHandles`.
+    private OcResource getNativeHandle(String key, OcfResource ocfResource) {
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
+        if (entry != null) {
+            return entry.getNativeResource();
+        }
 
-        for(Map<OcfResource, OcfResourceRepresentation> map: this.resourceUpdates) {
-            for(Map.Entry<OcfResource, OcfResourceRepresentation> entry: map.entrySet()) {
-                JSONObject obj = new JSONObject();
-                obj.put(
-                    entry.getKey().getId().getUniqueKey(),
-                    entry.getValue().toJSON());
-                updates.put(obj);
+        OcResource nativeResource = this.nativeHandles.get(key);
+        if (nativeResource == null) {
+            nativeResource = OcfBackendIotivity.resourceToNative(ocfResource);
+            if (nativeResource != null) {
+                this.metrics.counter("nativeHandles.constructed").incrementAndGet();
+                this.nativeHandles.put(key, nativeResource);
             }
         }
+        return nativeResource;
+    }
+
+    public int getResourceUpdates(OcfWriter writer) throws JSONException {
+        return this.resourceUpdates.drainTo(writer);
+    }
+
+    public JSONObject configureResourceUpdates(JSONObject options)
+        throws JSONException
+    {
+        // Everything is parsed before anything is applied, so that an
+        // invalid option leaves the others unapplied.
+        OcfResourceUpdateQueue.Config queueConfig =
+            OcfResourceUpdateQueue.Config.fromJSON(options);
+        OcfNotificationFilter.Config deliveryConfig =
+            OcfNotificationFilter.Config.fromJSON(options);
+        this.resourceUpdates.configure(queueConfig);
+        this.notifications.configure(deliveryConfig);
+
+        JSONObject status = this.resourceUpdates.toJSON();
+        status.put("delivery", this.notifications.toJSON());
+        return status;
+    }
+
+    public synchronized void subscribeResourceUpdates(
+        JSONArray args, CallbackContext cc) throws JSONException
+    {
+        this.unsubscribeResourceUpdates();
+        this.updateStream = OcfResourceUpdateStream.fromJSON(
+            this, cc, args.optJSONObject(0), this.metrics);
+
+        // Push out whatever was queued before the subscription.
+        if (this.resourceUpdates.size() > 0) {
+            this.updateStream.notifyUpdate();
+        }
+    }
 
-        this.resourceUpdates.clear();
-        return updates;
+    public synchronized void unsubscribeResourceUpdates() {
+        if (this.updateStream != null) {
+            this.updateStream.close();
+            this.updateStream = null;
+        }
     }
 
     public JSONObject getResourceProperties(String key) throws JSONException {
         JSONObject obj = new JSONObject();
-        OcResource nativeResource = this.getSeenResourceByKey(key);
-        OcfResource resource = this.nativeToOcfResourceMap.get(nativeResource);
+        OcfResourceRegistry.Entry entry = this.registry.get(key);
 
-        if (resource != null) {
+        if (entry != null) {
+            this.observations.touch(key);
             obj.put("key", key);
-            obj.put("properties", resource.getProperties().toJSON());
+            synchronized (this) {
+                obj.put("properties", entry.getOcfResource().getProperties().toJSON());
+            }
         } else {
             Log.d("CordovaPluginOCF", "Resource not found: " + key);
         }
 
         return obj;
     }
+
+    public void getResourcesProperties(JSONObject options, OcfWriter writer)
+        throws JSONException
+    {
+        int cursor = this.readyResources.getCursor();
+        List<String> keys = this.readyResources.getRequestedKeys(options);
+
+        writer.beginObject();
+        writer.property("cursor", cursor);
+        writer.name("resources").beginArray();
+        for (String key: keys) {
+            OcfResourceRegistry.Entry entry = this.registry.get(key);
+            if (entry != null) {
+                this.observations.touch(key);
+                writer.beginObject();
+                writer.property("key", key);
+                synchronized (this) {
+                    writer.property("properties", entry.getOcfResource().getProperties());
+                }
+                writer.endObject();
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    public boolean observeResource(String key) {
+        return this.observations.observe(key);
+    }
+
+    public void unobserveResource(String key) {
+        this.observations.unobserve(key);
+    }
+
+    public JSONObject configureObservations(JSONObject options)
+        throws JSONException
+    {
+        this.observations.configure(options);
+        return this.observations.toJSON();
+    }
 }
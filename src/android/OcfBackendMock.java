@@ -20,19 +20,180 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 
-public class OcfBackendMock implements OcfBackendInterface {
-    private List<Map<OcfResource, OcfResourceRepresentation> > resourceUpdates =
-        new ArrayList<Map<OcfResource, OcfResourceRepresentation> >();
+// A backend that needs no network. By default, it "finds" whatever resource
+// it is asked for, and echoes updates back as notifications. With a
+// `simulation` option (see `OcfFleetSimulator.Config`), it simulates a whole
+// fleet of devices instead:
+//
+//   ocf.setBackend("mock", {simulation: {devices: 100, resourcesPerDevice: 100}})
+public class OcfBackendMock
+    implements OcfBackendInterface, OcfFleetSimulator.Listener
+{
+    private OcfResourceUpdateQueue resourceUpdates = new OcfResourceUpdateQueue();
+    private volatile OcfResourceUpdateStream updateStream;
 
-    public OcfBackendMock(OcfPlugin plugin) {
+    // The mock "finds" resources with all their properties, so they are
+    // ready as soon as they are found.
+    private Map<String, OcfResource> resources = new HashMap<String, OcfResource>();
+    private OcfResourceReadyLog readyResources = new OcfResourceReadyLog();
+
+    private OcfMetrics metrics;
+
+    // Any known resource can be observed, but only simulated ones get
+    // notifications. Never call into it with `this` locked: the observer
+    // locks `this` in turn.
+    private OcfObservationManager observations;
+
+    // Throttles and deadbands notifications, echoes included.
+    private OcfNotificationFilter notifications;
+
+    // Mock resources are always there, but simulated ones may not answer
+    // probes, and anything idle is lost when probing is off.
+    private OcfLivenessTracker liveness;
+
+    // Only in simulation mode.
+    private OcfFleetSimulator simulator;
+    private CallbackContext findDevicesCallbackContext;
+
+    // The `findResources` calls in progress.
+    private OcfDiscoverySessions discoveries;
+
+    public OcfBackendMock(OcfPlugin plugin, JSONObject options)
+        throws JSONException
+    {
+        final OcfBackendMock self = this;
+
+        if (options != null && options.has("simulation")) {
+            this.simulator = new OcfFleetSimulator(
+                OcfFleetSimulator.Config.fromJSON(options.getJSONObject("simulation")),
+                this);
+        }
+
+        this.metrics = plugin.getMetrics();
+        this.discoveries = new OcfDiscoverySessions(this.metrics);
+        this.resourceUpdates.setLatencyHistogram(this.metrics.histogram("observe"));
+        this.notifications = new OcfNotificationFilter(
+            new OcfNotificationFilter.Sink() {
+                public void deliver(OcfResource resource, OcfResourceRepresentation repr) {
+                    self.queueUpdate(resource, repr);
+                }
+            }, this.metrics);
+        this.liveness = new OcfLivenessTracker(
+            OcfLivenessTracker.Config.fromJSON(
+                options != null ? options.optJSONObject("liveness") : null),
+            new OcfLivenessTracker.Listener() {
+                public void onResourceIdle(String key) {
+                    if (self.simulator == null || self.simulator.hasResource(key)) {
+                        self.liveness.seen(key);
+                    } else {
+                        self.liveness.lost(key);
+                    }
+                }
+
+                public void onResourceLost(String key) {
+                    self.evictResource(key);
+                }
+            },
+            this.metrics);
+        this.observations = new OcfObservationManager(new OcfObservationManager.Observer() {
+            public boolean startObserving(String key) {
+                if (self.simulator != null) {
+                    return self.simulator.observe(key);
+                }
+                synchronized (self) {
+                    return self.resources.containsKey(key);
+                }
+            }
+
+            public void stopObserving(String key) {
+                self.notifications.remove(key);
+                if (self.simulator != null) {
+                    self.simulator.cancelObserve(key);
+                }
+            }
+        });
+
+        this.metrics.gauge("updates.queued", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.size(); }
+        });
+        this.metrics.gauge("updates.dropped", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.getDroppedCount(); }
+        });
+        this.metrics.gauge("updates.coalesced", new OcfMetrics.Gauge() {
+            public long get() { return self.resourceUpdates.getCoalescedCount(); }
+        });
+        this.metrics.gauge("registry.resources", new OcfMetrics.Gauge() {
+            public long get() {
+                synchronized (self) {
+                    return self.resources.size();
+                }
+            }
+        });
+        this.metrics.gauge("observations.active", new OcfMetrics.Gauge() {
+            public long get() { return self.observations.size(); }
+        });
+        this.metrics.gauge("liveness.tracked", new OcfMetrics.Gauge() {
+            public long get() { return self.liveness.size(); }
+        });
+        this.metrics.gauge("discovery.sessionsOpen", new OcfMetrics.Gauge() {
+            public long get() { return self.discoveries.size(); }
+        });
+    }
+
+    public void close() {
+        this.unsubscribeResourceUpdates();
+        this.observations.clear();
+        this.notifications.close();
+        this.liveness.close();
+        this.discoveries.close();
+        if (this.simulator != null) {
+            this.simulator.stop();
+        }
     }
 
     public void findResources(JSONArray args, CallbackContext cc)
             throws JSONException
     {
+        final OcfBackendMock self = this;
         final JSONObject obj = args.getJSONObject(0);
-        OcfResource res = new OcfResource(
-            obj.optString("deviceId"), obj.optString("resourcePath"));
+        OcfDiscoverySessions.Session session = this.discoveries.open(obj, cc);
+
+        // Simulated hosts answer when the simulator says so, and unknown
+        // ones never do; mock hosts answer right away.
+        if (session.isFanOut()) {
+            this.discoveries.start(session, new OcfDiscoverySessions.Prober() {
+                public void probe(OcfDiscoverySessions.Session session, String host) {
+                    if (self.simulator != null) {
+                        self.simulator.discoverResources(
+                            session.getId(), host, session.getFilter());
+                        return;
+                    }
+                    try {
+                        self.discoverMockResource(session, obj, host);
+                        self.discoveries.hostAnswered(session, host);
+                    } catch (JSONException ex) {
+                        self.discoveries.hostFailed(session, host, ex.getMessage());
+                    }
+                }
+            });
+            return;
+        }
+
+        if (this.simulator != null) {
+            this.simulator.discoverResources(
+                session.getId(), session.getDeviceId(), session.getFilter());
+            return;
+        }
+
+        this.discoverMockResource(session, obj, session.getDeviceId());
+    }
+
+    // The mock "device" has the resource the options describe.
+    private void discoverMockResource(
+        OcfDiscoverySessions.Session session, final JSONObject obj, String deviceId)
+        throws JSONException
+    {
+        OcfResource res = new OcfResource(deviceId, obj.optString("resourcePath"));
 
         res.setResourceTypes(new ArrayList<String>() {{
             JSONArray a = obj.optJSONArray("resourceTypes");
@@ -56,13 +217,47 @@ public class OcfBackendMock implements OcfBackendInterface {
 
         res.setObservable(false);
 
-        OcfResourceEvent ev = new OcfResourceEvent(res);
-        PluginResult result = new PluginResult(PluginResult.Status.OK, ev.toJSON());
-        result.setKeepCallback(true);
-        cc.sendPluginResult(result);
+        if (session.getFilter().matches(res)) {
+            this.registerResource(res);
+            this.discoveries.report(session, res);
+        }
+    }
+
+    public boolean cancelDiscovery(String requestId) {
+        return this.discoveries.cancel(requestId);
+    }
+
+    // Mock resources come with their properties, so they are ready right
+    // away.
+    private void registerResource(OcfResource res) {
+        String key = res.getId().register().toString();
+        synchronized (this) {
+            this.resources.put(key, res);
+        }
+        this.readyResources.add(key);
+        this.liveness.seen(key);
+
+        this.metrics.counter("discovery.resources").incrementAndGet();
+        for (String resourceType: res.getResourceTypes()) {
+            this.metrics.group("discovery.resourceTypes").increment(resourceType);
+        }
+
+        this.observations.onResourceFound(key, res.getObservable());
     }
 
     public void findDevices(CallbackContext cc) {
+        if (this.simulator != null) {
+            synchronized (this) {
+                this.findDevicesCallbackContext = cc;
+            }
+            this.simulator.discoverDevices();
+            return;
+        }
+
+        this.sendDeviceEvent(cc, this.createDevice());
+    }
+
+    private OcfDevice createDevice() {
         OcfDevice device = new OcfDevice();
         device.setUuid("1234567890");
         device.setUrl("http://example.com/");
@@ -74,9 +269,15 @@ public class OcfBackendMock implements OcfBackendInterface {
         device.setCoreSpecVersion("0.1.0");
         device.setRole("server");
 
+        return device;
+    }
+
+    private void sendDeviceEvent(CallbackContext cc, OcfDevice device) {
         OcfDeviceEvent ev = new OcfDeviceEvent(device);
         try {
-            PluginResult result = new PluginResult(PluginResult.Status.OK, ev.toJSON());
+            this.metrics.counter("discovery.devices").incrementAndGet();
+            PluginResult result = OcfPluginResults.encode(
+                ev, OcfWriter.FORMAT_JSON, this.metrics, "findDevices");
             result.setKeepCallback(true);
             cc.sendPluginResult(result);
         } catch (JSONException e) {
@@ -84,41 +285,267 @@ public class OcfBackendMock implements OcfBackendInterface {
         }
     }
 
-    public void updateResource(JSONArray args, CallbackContext cc)
+    public void updateResource(JSONArray args, final CallbackContext cc)
         throws JSONException
     {
+        final OcfBackendMock self = this;
+        final long start = System.nanoTime();
         OcfResource resource = OcfResource.fromJSON(args.getJSONObject(0));
-        OcfResourceRepresentation repr = resource.getProperties();
+        this.observations.touch(resource.getId().getUniqueKey());
 
-        Map<OcfResource, OcfResourceRepresentation> update =
-            new HashMap<OcfResource, OcfResourceRepresentation>();
-        update.put(resource, repr);
-        this.resourceUpdates.add(update);
+        if (this.simulator != null) {
+            this.simulator.put(resource, new OcfFleetSimulator.PutCallback() {
+                public void onPutCompleted(OcfResource resource) {
+                    self.metrics.histogram("put").recordSince(start);
+                    self.sendUpdateEvent(cc, resource);
+                }
 
+                public void onPutFailed(String reason) {
+                    self.metrics.counter("put.errors").incrementAndGet();
+                    cc.error("PUT failed: " + reason);
+                }
+            });
+            return;
+        }
+
+        this.applyUpdate(resource);
+        this.metrics.histogram("put").recordSince(start);
+        this.sendUpdateEvent(cc, resource);
+    }
+
+    private void sendUpdateEvent(CallbackContext cc, OcfResource resource) {
         OcfResourceUpdateEvent ev = new OcfResourceUpdateEvent(resource);
-        PluginResult result = new PluginResult(PluginResult.Status.OK, ev.toJSON());
-        result.setKeepCallback(true);
-        cc.sendPluginResult(result);
-    }
-
-    public JSONArray getResourceUpdates() throws JSONException {
-        JSONArray updates = new JSONArray();
-        for(Map<OcfResource, OcfResourceRepresentation> map: this.resourceUpdates) {
-            for(Map.Entry<OcfResource, OcfResourceRepresentation> entry: map.entrySet()) {
-                JSONObject obj = new JSONObject();
-                obj.put(
-                    entry.getKey().getId().getUniqueKey(),
-                    entry.getValue().toJSON());
-                updates.put(obj);
+        try {
+            PluginResult result = OcfPluginResults.encode(
+                ev, OcfWriter.FORMAT_JSON, this.metrics, "updateResource");
+            result.setKeepCallback(true);
+            cc.sendPluginResult(result);
+        } catch (JSONException ex) {
+            cc.error(ex.getMessage());
+        }
+    }
+
+    public void updateResources(JSONArray args, CallbackContext cc)
+        throws JSONException
+    {
+        final OcfBackendMock self = this;
+
+        new OcfUpdateBatch(args.getJSONArray(0), args.optJSONObject(1), cc) {
+            protected void issue(final int index, OcfResource resource) {
+                if (self.simulator == null) {
+                    self.applyUpdate(resource);
+                    this.succeed(index);
+                    return;
+                }
+
+                final OcfUpdateBatch batch = this;
+                self.simulator.put(resource, new OcfFleetSimulator.PutCallback() {
+                    public void onPutCompleted(OcfResource resource) {
+                        batch.succeed(index);
+                    }
+
+                    public void onPutFailed(String reason) {
+                        batch.fail(index, reason);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    // ------------------------------------------------------------------------
+    // OcfFleetSimulator.Listener
+    // ------------------------------------------------------------------------
+
+    public void onDeviceFound(OcfDevice device) {
+        CallbackContext cc;
+        synchronized (this) {
+            cc = this.findDevicesCallbackContext;
+        }
+        if (cc != null) {
+            this.sendDeviceEvent(cc, device);
+        }
+    }
+
+    public void onResourceFound(String requestId, OcfResource resource) {
+        OcfDiscoverySessions.Session session = this.discoveries.get(requestId);
+        if (session == null) {
+            return;
+        }
+
+        // Simulator callbacks come from a single thread, so the resource
+        // can't be registered in between.
+        OcfResource known;
+        synchronized (this) {
+            known = this.resources.get(resource.getId().getUniqueKey());
+        }
+
+        if (known == null) {
+            this.registerResource(resource);
+        }
+        this.discoveries.report(session, known != null ? known : resource);
+        if (session.isFanOut()) {
+            this.discoveries.hostAnswered(session, resource.getId().getDeviceId());
+        }
+    }
+
+    public void onResourceUpdate(String key, OcfResourceRepresentation repr) {
+        OcfResource known;
+        synchronized (this) {
+            known = this.resources.get(key);
+            if (known == null) {
+                return;
+            }
+            for (Map.Entry<String, Object> entry: repr.getProperties().entrySet()) {
+                known.setProperty(entry.getKey(), entry.getValue());
             }
         }
 
-        this.resourceUpdates.clear();
-        return updates;
+        this.metrics.counter("observe.notifications").incrementAndGet();
+        this.liveness.seen(key);
+        this.notifications.offer(known, repr);
+    }
+
+
+    // The mock "device" echoes every update back as an observe notification.
+    private void applyUpdate(OcfResource resource) {
+        synchronized (this) {
+            OcfResource known = this.resources.get(resource.getId().getUniqueKey());
+            if (known != null) {
+                this.liveness.seen(resource.getId().getUniqueKey());
+                for (Map.Entry<String, Object> entry:
+                     resource.getProperties().getProperties().entrySet())
+                {
+                    known.setProperty(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        this.notifications.offer(resource, resource.getProperties());
+    }
+
+    private void evictResource(String key) {
+        OcfResource resource;
+
+        // The observation is cancelled while the resource is still known.
+        this.observations.unobserve(key);
+        this.notifications.remove(key);
+        this.resourceUpdates.forget(key);
+        this.readyResources.remove(key);
+
+        synchronized (this) {
+            resource = this.resources.remove(key);
+        }
+        if (resource != null) {
+            this.discoveries.reportLost(resource.getId());
+            OcfResourceKey resourceKey = resource.getId().getKey();
+            if (resourceKey != null) {
+                OcfResourceKey.release(resourceKey);
+            }
+        }
+    }
+
+    private void queueUpdate(OcfResource resource, OcfResourceRepresentation repr) {
+        boolean queued = this.resourceUpdates.add(resource, repr);
+        OcfResourceUpdateStream stream = this.updateStream;
+        if (queued && stream != null) {
+            stream.notifyUpdate();
+        }
+    }
+
+    public int getResourceUpdates(OcfWriter writer) throws JSONException {
+        return this.resourceUpdates.drainTo(writer);
+    }
+
+    public JSONObject configureResourceUpdates(JSONObject options)
+        throws JSONException
+    {
+        // Everything is parsed before anything is applied, so that an
+        // invalid option leaves the others unapplied.
+        OcfResourceUpdateQueue.Config queueConfig =
+            OcfResourceUpdateQueue.Config.fromJSON(options);
+        OcfNotificationFilter.Config deliveryConfig =
+            OcfNotificationFilter.Config.fromJSON(options);
+        this.resourceUpdates.configure(queueConfig);
+        this.notifications.configure(deliveryConfig);
+
+        JSONObject status = this.resourceUpdates.toJSON();
+        status.put("delivery", this.notifications.toJSON());
+        return status;
+    }
+
+    public synchronized void subscribeResourceUpdates(
+        JSONArray args, CallbackContext cc) throws JSONException
+    {
+        this.unsubscribeResourceUpdates();
+        this.updateStream = OcfResourceUpdateStream.fromJSON(
+            this, cc, args.optJSONObject(0), this.metrics);
+
+        if (this.resourceUpdates.size() > 0) {
+            this.updateStream.notifyUpdate();
+        }
+    }
+
+    public synchronized void unsubscribeResourceUpdates() {
+        if (this.updateStream != null) {
+            this.updateStream.close();
+            this.updateStream = null;
+        }
     }
 
     public JSONObject getResourceProperties(String key) throws JSONException {
-        //TODO: implement
-        return null;
+        JSONObject obj = new JSONObject();
+        this.observations.touch(key);
+
+        synchronized (this) {
+            OcfResource resource = this.resources.get(key);
+            if (resource != null) {
+                obj.put("key", key);
+                obj.put("properties", resource.getProperties().toJSON());
+            }
+        }
+
+        return obj;
+    }
+
+    public void getResourcesProperties(JSONObject options, OcfWriter writer)
+        throws JSONException
+    {
+        int cursor = this.readyResources.getCursor();
+        List<String> keys = this.readyResources.getRequestedKeys(options);
+        for (String key: keys) {
+            this.observations.touch(key);
+        }
+
+        writer.beginObject();
+        writer.property("cursor", cursor);
+        writer.name("resources").beginArray();
+        synchronized (this) {
+            for (String key: keys) {
+                OcfResource resource = this.resources.get(key);
+                if (resource != null) {
+                    writer.beginObject();
+                    writer.property("key", key);
+                    writer.property("properties", resource.getProperties());
+                    writer.endObject();
+                }
+            }
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    public boolean observeResource(String key) {
+        return this.observations.observe(key);
+    }
+
+    public void unobserveResource(String key) {
+        this.observations.unobserve(key);
+    }
+
+    public JSONObject configureObservations(JSONObject options)
+        throws JSONException
+    {
+        this.observations.configure(options);
+        return this.observations.toJSON();
     }
 }
@@ -0,0 +1,297 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.Arrays;
+import java.util.Iterator;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Writes CBOR (RFC 7049) into a reusable byte buffer, as a compact binary
+// alternative to `OcfJsonWriter` for bulk payloads. The result, sent with
+// `PluginResult`'s byte array constructor, reaches the frontend as an
+// `ArrayBuffer`, which ocf.js decodes into the same values `JSON.parse`
+// would have produced from the JSON encoding:
+//
+//  - objects and arrays are written with indefinite lengths, so nothing has
+//    to be counted up front;
+//  - whole numbers are written as integers (as `JSONObject.numberToString`
+//    does), others as single precision floats when that is lossless, or as
+//    doubles otherwise;
+//  - values org.json would write as strings are written as text strings.
+//
+// Like `OcfJsonWriter`, writers are not thread safe, and `obtain` returns a
+// per-thread one.
+public class OcfCborWriter extends OcfWriter {
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+
+    private static final int ARRAY_INDEFINITE = 0x9f;
+    private static final int MAP_INDEFINITE = 0xbf;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0d);
+
+    private static final ThreadLocal<OcfCborWriter> writers =
+        new ThreadLocal<OcfCborWriter>() {
+            protected OcfCborWriter initialValue() {
+                return new OcfCborWriter();
+            }
+        };
+
+    private byte[] buffer = new byte[1024];
+    private int length = 0;
+
+    public static OcfCborWriter obtain() {
+        OcfCborWriter writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    public void reset() {
+        if (this.buffer.length > MAX_RETAINED_CAPACITY) {
+            this.buffer = new byte[1024];
+        }
+        this.length = 0;
+    }
+
+    public int size() {
+        return this.length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.buffer, this.length);
+    }
+
+    // ------------------------------------------------------------------------
+    // OcfWriter
+    // ------------------------------------------------------------------------
+
+    public OcfWriter beginObject() {
+        this.writeByte(MAP_INDEFINITE);
+        return this;
+    }
+
+    public OcfWriter endObject() {
+        this.writeByte(BREAK);
+        return this;
+    }
+
+    public OcfWriter beginArray() {
+        this.writeByte(ARRAY_INDEFINITE);
+        return this;
+    }
+
+    public OcfWriter endArray() {
+        this.writeByte(BREAK);
+        return this;
+    }
+
+    public OcfWriter name(String name) {
+        this.text(name);
+        return this;
+    }
+
+    public OcfWriter value(String value) {
+        if (value == null) {
+            this.writeByte(NULL);
+        } else {
+            this.text(value);
+        }
+        return this;
+    }
+
+    public OcfWriter value(boolean value) {
+        this.writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public OcfWriter value(Number value) throws JSONException {
+        if (value instanceof Integer || value instanceof Long ||
+            value instanceof Short || value instanceof Byte)
+        {
+            this.integer(value.longValue());
+            return this;
+        }
+
+        return this.value(value.doubleValue());
+    }
+
+    public OcfWriter value(long value) {
+        this.integer(value);
+        return this;
+    }
+
+    public OcfWriter value(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+
+        long l = (long) value;
+        if (value == (double) l && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS) {
+            this.integer(l);
+        } else if ((double) (float) value == value) {
+            this.writeByte(FLOAT32);
+            this.writeInt(Float.floatToIntBits((float) value));
+        } else {
+            long bits = Double.doubleToLongBits(value);
+            this.writeByte(FLOAT64);
+            this.writeInt((int) (bits >>> 32));
+            this.writeInt((int) bits);
+        }
+        return this;
+    }
+
+    public OcfWriter value(Object value) throws JSONException {
+        if (value instanceof String) {
+            return this.value((String) value);
+        } else if (value instanceof Boolean) {
+            return this.value(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            return this.value((Number) value);
+        } else if (value instanceof OcfObjectInterface) {
+            return this.value((OcfObjectInterface) value);
+        } else if (value == null || value == JSONObject.NULL) {
+            this.writeByte(NULL);
+        } else if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            this.beginObject();
+            Iterator<String> it = obj.keys();
+            while (it.hasNext()) {
+                String key = it.next();
+                this.name(key);
+                this.value(obj.get(key));
+            }
+            this.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            this.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                this.value(array.get(i));
+            }
+            this.endArray();
+        } else {
+            this.text(value.toString());
+        }
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private void integer(long value) {
+        if (value >= 0) {
+            this.header(MAJOR_UNSIGNED, value);
+        } else {
+            this.header(MAJOR_NEGATIVE, ~value);
+        }
+    }
+
+    // `argument` is unsigned.
+    private void header(int major, long argument) {
+        int type = major << 5;
+        if (argument >= 0 && argument < 24) {
+            this.writeByte(type | (int) argument);
+        } else if (argument >= 0 && argument <= 0xff) {
+            this.writeByte(type | 24);
+            this.writeByte((int) argument);
+        } else if (argument >= 0 && argument <= 0xffff) {
+            this.writeByte(type | 25);
+            this.writeByte((int) (argument >>> 8));
+            this.writeByte((int) argument);
+        } else if (argument >= 0 && argument <= 0xffffffffL) {
+            this.writeByte(type | 26);
+            this.writeInt((int) argument);
+        } else {
+            this.writeByte(type | 27);
+            this.writeInt((int) (argument >>> 32));
+            this.writeInt((int) argument);
+        }
+    }
+
+    // UTF-8 encodes `value` in place, after its length. Unpaired surrogates
+    // are written as '?', as `String.getBytes` does.
+    private void text(String value) {
+        int count = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length += 1;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < count &&
+                       Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length += 1;
+            } else {
+                utf8Length += 3;
+            }
+        }
+
+        this.header(MAJOR_TEXT, utf8Length);
+        this.ensureCapacity(utf8Length);
+
+        byte[] b = this.buffer;
+        int p = this.length;
+        for (int i = 0; i < count; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xc0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count &&
+                       Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                b[p++] = (byte) (0xf0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = (byte) '?';
+            } else {
+                b[p++] = (byte) (0xe0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        this.length = p;
+    }
+
+    private void writeInt(int value) {
+        this.ensureCapacity(4);
+        this.buffer[this.length++] = (byte) (value >>> 24);
+        this.buffer[this.length++] = (byte) (value >>> 16);
+        this.buffer[this.length++] = (byte) (value >>> 8);
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (this.length + extra > this.buffer.length) {
+            this.buffer = Arrays.copyOf(
+                this.buffer, Math.max(this.buffer.length * 2, this.length + extra));
+        }
+    }
+}
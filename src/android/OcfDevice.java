@@ -51,4 +51,35 @@ public class OcfDevice implements OcfObjectInterface {
 
         return o;
     }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("uuid", this.uuid);
+        writer.property("url", this.url);
+        writer.property("name", this.name);
+        writer.name("dataModels").stringArray(this.dataModels);
+        writer.property("coreSpecVersion", this.coreSpecVersion);
+        writer.property("role", this.role);
+        writer.endObject();
+    }
+
+    public static OcfDevice fromJSON(JSONObject obj) throws JSONException {
+        OcfDevice device = new OcfDevice();
+
+        device.uuid = obj.optString("uuid", null);
+        device.url = obj.optString("url", null);
+        device.name = obj.optString("name", null);
+        device.coreSpecVersion = obj.optString("coreSpecVersion", null);
+        device.role = obj.optString("role", null);
+
+        device.dataModels = new ArrayList<String>();
+        JSONArray dataModelsJson = obj.optJSONArray("dataModels");
+        if (dataModelsJson != null) {
+            for (int i = 0; i < dataModelsJson.length(); i++) {
+                device.dataModels.add(dataModelsJson.getString(i));
+            }
+        }
+
+        return device;
+    }
 }
@@ -8,14 +8,35 @@ import org.json.JSONObject;
 public class OcfDeviceEvent implements OcfObjectInterface {
     public OcfDevice device;
 
+    // Whether this event comes from the discovery cache rather than from
+    // live discovery.
+    public boolean stale = false;
+
     public OcfDeviceEvent(OcfDevice device) {
         this.device = device;
     }
 
+    public OcfDeviceEvent(OcfDevice device, boolean stale) {
+        this.device = device;
+        this.stale = stale;
+    }
+
     public JSONObject toJSON() throws JSONException {
         JSONObject o = new JSONObject();
         o.put("device", this.device.toJSON());
+        if (this.stale) {
+            o.put("stale", true);
+        }
 
         return o;
     }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("device", this.device);
+        if (this.stale) {
+            writer.property("stale", true);
+        }
+        writer.endObject();
+    }
 }
@@ -0,0 +1,363 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Android
+import android.util.Log;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A persistent cache of previously discovered resources (including their
+// last known properties) and devices, so that a freshly started app can show
+// them right away, as "stale", while live discovery catches up. It is stored
+// as a compact JSON file in the app's private storage.
+//
+// Entries expire `ttl` ms after they were last seen, and only the
+// `maxResources`/`maxDevices` most recently seen ones are kept. Changes are
+// written to disk at most once every `SAVE_DELAY` ms, on a background
+// thread, and `close` writes any pending ones right away.
+public class OcfDiscoveryCache {
+    public static final String FILE_NAME = "ocf-discovery-cache.json";
+    public static final long DEFAULT_TTL = 7L * 24 * 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_RESOURCES = 500;
+    public static final int DEFAULT_MAX_DEVICES = 100;
+
+    private static final int VERSION = 1;
+    private static final int SAVE_DELAY = 2000;
+
+    // An entry keeps its JSON form, to be saved, and the resource or device
+    // decoded from it, to be served: decoded once, at load or on first use.
+    private static class Entry {
+        JSONObject json;
+        Object decoded;
+        long lastSeen;
+
+        Entry(JSONObject json, long lastSeen) {
+            this.json = json;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final File file;
+    private final long ttl;
+    private final int maxResources;
+    private final int maxDevices;
+
+    // Both maps are kept in least recently seen first order.
+    private final Map<String, Entry> resources = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<String, Entry> devices = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final ScheduledExecutorService saver =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OcfDiscoveryCache");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    private boolean saveScheduled = false;
+    private boolean closed = false;
+
+    // Serializes writes of the file, from the saver thread and `close`.
+    private final Object fileLock = new Object();
+
+
+    public OcfDiscoveryCache(File file) {
+        this(file, DEFAULT_TTL, DEFAULT_MAX_RESOURCES, DEFAULT_MAX_DEVICES);
+    }
+
+    public OcfDiscoveryCache(File file, long ttl, int maxResources, int maxDevices) {
+        this.file = file;
+        this.ttl = ttl;
+        this.maxResources = maxResources;
+        this.maxDevices = maxDevices;
+    }
+
+    // ------------------------------------------------------------------------
+    // Getters
+    // ------------------------------------------------------------------------
+
+    // The cached resources that are still fresh enough to be served. They
+    // are shared by all callers, which must not change them.
+    public synchronized List<OcfResource> getResources() {
+        List<OcfResource> list = new ArrayList<OcfResource>();
+        this.expire();
+        decodeEntries(this.resources, "r");
+        for (Entry entry: this.resources.values()) {
+            list.add((OcfResource) entry.decoded);
+        }
+        return list;
+    }
+
+    public synchronized List<OcfDevice> getDevices() {
+        List<OcfDevice> list = new ArrayList<OcfDevice>();
+        this.expire();
+        decodeEntries(this.devices, "d");
+        for (Entry entry: this.devices.values()) {
+            list.add((OcfDevice) entry.decoded);
+        }
+        return list;
+    }
+
+    public synchronized int size() {
+        return this.resources.size() + this.devices.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Setters
+    // ------------------------------------------------------------------------
+
+    // Stores a snapshot of `resource`: call again when it changes (e.g. when
+    // its properties arrive) to refresh the cached copy.
+    public synchronized void putResource(OcfResource resource) {
+        try {
+            this.resources.put(
+                resource.getId().getUniqueKey(),
+                new Entry(resource.toJSON(), System.currentTimeMillis()));
+        } catch (JSONException ex) {
+            Log.w("CordovaPluginOCF", "Unable to cache resource: " + ex.getMessage());
+            return;
+        }
+        evict(this.resources, this.maxResources);
+        this.scheduleSave();
+    }
+
+    public synchronized void putDevice(OcfDevice device) {
+        if (device.getUuid() == null) {
+            return;
+        }
+
+        try {
+            this.devices.put(
+                device.getUuid(),
+                new Entry(device.toJSON(), System.currentTimeMillis()));
+        } catch (JSONException ex) {
+            Log.w("CordovaPluginOCF", "Unable to cache device: " + ex.getMessage());
+            return;
+        }
+        evict(this.devices, this.maxDevices);
+        this.scheduleSave();
+    }
+
+    public synchronized void remove(String key) {
+        if (this.resources.remove(key) != null) {
+            this.scheduleSave();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Persistence
+    // ------------------------------------------------------------------------
+
+    public synchronized void load() {
+        if (!this.file.exists()) {
+            return;
+        }
+
+        try {
+            JSONObject o = new JSONObject(readFile(this.file));
+            if (o.optInt("version") != VERSION) {
+                Log.d("CordovaPluginOCF", "Discarding discovery cache version " + o.optInt("version"));
+                return;
+            }
+
+            loadEntries(o.optJSONArray("resources"), this.resources, "r");
+            loadEntries(o.optJSONArray("devices"), this.devices, "d");
+            this.expire();
+            evict(this.resources, this.maxResources);
+            evict(this.devices, this.maxDevices);
+            decodeEntries(this.resources, "r");
+            decodeEntries(this.devices, "d");
+
+            Log.d("CordovaPluginOCF", "Loaded " + this.resources.size() +
+                  " resources and " + this.devices.size() + " devices from cache");
+        } catch (IOException ex) {
+            Log.e("CordovaPluginOCF", "Unable to read discovery cache: " + ex.getMessage());
+        } catch (JSONException ex) {
+            Log.e("CordovaPluginOCF", "Invalid discovery cache: " + ex.getMessage());
+        }
+    }
+
+    public void save() {
+        String data;
+
+        synchronized (this) {
+            this.saveScheduled = false;
+            try {
+                this.expire();
+                JSONObject o = new JSONObject();
+                o.put("version", VERSION);
+                o.put("resources", saveEntries(this.resources, "r"));
+                o.put("devices", saveEntries(this.devices, "d"));
+                data = o.toString();
+            } catch (JSONException ex) {
+                Log.e("CordovaPluginOCF", "Unable to serialize discovery cache: " + ex.getMessage());
+                return;
+            }
+        }
+
+        synchronized (this.fileLock) {
+            this.write(data);
+        }
+    }
+
+    // Writes pending changes, and stops the saver thread.
+    public void close() {
+        boolean pending;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            pending = this.saveScheduled;
+        }
+
+        this.saver.shutdownNow();
+        if (pending) {
+            this.save();
+        }
+    }
+
+    private void write(String data) {
+        // Write to a temporary file first, so a crash never leaves a
+        // truncated cache behind.
+        File tmp = new File(this.file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            writer.write(data);
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(this.file)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException ex) {
+            Log.e("CordovaPluginOCF", "Unable to write discovery cache: " + ex.getMessage());
+        } finally {
+            if (writer != null) {
+                try { writer.close(); } catch (IOException ex) {}
+            }
+        }
+    }
+
+    private void scheduleSave() {
+        if (this.saveScheduled || this.closed) {
+            return;
+        }
+
+        this.saveScheduled = true;
+        final OcfDiscoveryCache self = this;
+        this.saver.schedule(new Runnable() {
+            public void run() {
+                self.save();
+            }
+        }, SAVE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private void expire() {
+        long oldest = System.currentTimeMillis() - this.ttl;
+        expire(this.resources, oldest);
+        expire(this.devices, oldest);
+    }
+
+    private static void expire(Map<String, Entry> map, long oldest) {
+        Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastSeen < oldest) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void evict(Map<String, Entry> map, int max) {
+        Iterator<Entry> it = map.values().iterator();
+        while (map.size() > max && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static void loadEntries(JSONArray array, Map<String, Entry> map, String field)
+        throws JSONException
+    {
+        if (array == null) {
+            return;
+        }
+
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject item = array.getJSONObject(i);
+            JSONObject json = item.getJSONObject(field);
+            String key = item.getString("k");
+            map.put(key, new Entry(json, item.getLong("t")));
+        }
+    }
+
+    // Decodes the entries that aren't yet, dropping invalid ones.
+    private static void decodeEntries(Map<String, Entry> map, String field) {
+        Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.decoded != null) {
+                continue;
+            }
+
+            try {
+                entry.decoded = field.equals("r") ?
+                    OcfResource.fromJSON(entry.json) : OcfDevice.fromJSON(entry.json);
+            } catch (JSONException ex) {
+                Log.w("CordovaPluginOCF", "Invalid cached entry: " + ex.getMessage());
+                it.remove();
+            }
+        }
+    }
+
+    private static JSONArray saveEntries(Map<String, Entry> map, String field)
+        throws JSONException
+    {
+        JSONArray array = new JSONArray();
+        for (Map.Entry<String, Entry> e: map.entrySet()) {
+            JSONObject item = new JSONObject();
+            item.put("k", e.getKey());
+            item.put("t", e.getValue().lastSeen);
+            item.put(field, e.getValue().json);
+            array.put(item);
+        }
+        return array;
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.intel.cordova.plugin.ocf;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// The last message of a discovery session (see `OcfDiscoverySessions`): why
+// it ended, how many resources it reported and how long it ran, in ms. For
+// sessions over a list of hosts, also how each of them fared.
+public class OcfDiscoveryCompleteEvent implements OcfObjectInterface {
+    public String requestId;
+    public String reason;
+    public int found;
+    public long duration;
+    public OcfDiscoveryFanOut hosts;
+
+    public OcfDiscoveryCompleteEvent(
+        String requestId, String reason, int found, long duration,
+        OcfDiscoveryFanOut hosts)
+    {
+        this.requestId = requestId;
+        this.reason = reason;
+        this.found = found;
+        this.duration = duration;
+        this.hosts = hosts;
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("discoveryComplete", this.requestId);
+        o.put("reason", this.reason);
+        o.put("found", this.found);
+        o.put("duration", this.duration);
+        if (this.hosts != null) {
+            o.put("hosts", this.hosts.toJSON());
+        }
+
+        return o;
+    }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("discoveryComplete", this.requestId);
+        writer.property("reason", this.reason);
+        writer.property("found", this.found);
+        writer.property("duration", this.duration);
+        if (this.hosts != null) {
+            writer.name("hosts");
+            this.hosts.write(writer);
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,205 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Unicast discovery of a list of hosts, at most `maxInFlight` at a time. A
+// host is sent its queries when a slot is free, and gives the slot back on
+// its first answer, on failure, or after `hostTimeout` ms of silence; later
+// answers still count as resources. The fan-out is done when every host
+// has had its turn.
+//
+// This only keeps the books: the caller sends the queries of the hosts
+// returned by `next`, and reports what becomes of them.
+public class OcfDiscoveryFanOut {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    public static final long DEFAULT_HOST_TIMEOUT = 5000;
+
+    private enum State {
+        QUEUED, PENDING, ANSWERED, FAILED, TIMEOUT;
+
+        public String toString() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    private static class Host {
+        final String host;
+        State state = State.QUEUED;
+        long sentAt;
+        long latency = -1;
+        int resources = 0;
+        String error;
+
+        Host(String host) {
+            this.host = host;
+        }
+    }
+
+    private final Map<String, Host> hosts = new LinkedHashMap<String, Host>();
+    // See `getAddress`.
+    private final Set<String> addresses = new HashSet<String>();
+    private final Queue<Host> queued = new ArrayDeque<Host>();
+    private final int maxInFlight;
+    private final long hostTimeout;
+    private final OcfMetrics.Histogram latencies;
+    private int inFlight = 0;
+
+    public OcfDiscoveryFanOut(
+        List<String> hosts, int maxInFlight, long hostTimeout,
+        OcfMetrics.Histogram latencies)
+    {
+        for (String host: hosts) {
+            if (!this.hosts.containsKey(host)) {
+                Host h = new Host(host);
+                this.hosts.put(host, h);
+                this.addresses.add(getAddress(host));
+                this.queued.add(h);
+            }
+        }
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.hostTimeout = hostTimeout;
+        this.latencies = latencies;
+    }
+
+    public long getHostTimeout() { return this.hostTimeout; }
+
+    // Whether `host` is one of ours, in whatever form, e.g. a resource's
+    // device ID, which backends build from its endpoint.
+    public synchronized boolean hasHost(String host) {
+        return this.hosts.containsKey(host) || this.addresses.contains(getAddress(host));
+    }
+
+    // The address of `host`, without scheme or port: "coap://1.2.3.4:5683",
+    // "1.2.3.4" and "coaps://1.2.3.4:5684" are all "1.2.3.4".
+    public static String getAddress(String host) {
+        if (host == null) {
+            return "";
+        }
+
+        int start = host.indexOf("://");
+        String address = start >= 0 ? host.substring(start + 3) : host;
+        int end = address.indexOf('/');
+        if (end >= 0) {
+            address = address.substring(0, end);
+        }
+
+        if (address.startsWith("[")) {
+            // IPv6, in brackets when there is a port.
+            end = address.indexOf(']');
+            if (end >= 0) {
+                address = address.substring(1, end);
+            }
+        } else if (address.indexOf(':') == address.lastIndexOf(':')) {
+            end = address.indexOf(':');
+            if (end >= 0) {
+                address = address.substring(0, end);
+            }
+        }
+
+        // Iotivity may add a zone to link local IPv6 addresses.
+        end = address.indexOf('%');
+        if (end >= 0) {
+            address = address.substring(0, end);
+        }
+
+        return address.toLowerCase();
+    }
+
+    // The hosts to send queries to now, if any.
+    public synchronized List<String> next() {
+        List<String> next = new ArrayList<String>();
+        while (this.inFlight < this.maxInFlight && !this.queued.isEmpty()) {
+            Host h = this.queued.poll();
+            h.state = State.PENDING;
+            h.sentAt = System.nanoTime();
+            this.inFlight++;
+            next.add(h.host);
+        }
+        return next;
+    }
+
+    // Returns whether this freed a slot, i.e. was the host's first answer.
+    public synchronized boolean answered(String host) {
+        Host h = this.hosts.get(host);
+        if (h == null) {
+            return false;
+        }
+        h.resources++;
+        return this.settle(h, State.ANSWERED, null);
+    }
+
+    public synchronized boolean failed(String host, String error) {
+        Host h = this.hosts.get(host);
+        return h != null && this.settle(h, State.FAILED, error);
+    }
+
+    public synchronized boolean timedOut(String host) {
+        Host h = this.hosts.get(host);
+        return h != null && this.settle(h, State.TIMEOUT, null);
+    }
+
+    private boolean settle(Host h, State state, String error) {
+        if (h.state != State.PENDING) {
+            return false;
+        }
+
+        h.state = state;
+        h.error = error;
+        if (state == State.ANSWERED) {
+            h.latency = (System.nanoTime() - h.sentAt) / 1000000;
+            this.latencies.recordSince(h.sentAt);
+        }
+        this.inFlight--;
+        return true;
+    }
+
+    public synchronized boolean isDone() {
+        return this.inFlight == 0 && this.queued.isEmpty();
+    }
+
+    public synchronized JSONArray toJSON() throws JSONException {
+        JSONArray a = new JSONArray();
+        for (Host h: this.hosts.values()) {
+            JSONObject o = new JSONObject();
+            o.put("host", h.host);
+            o.put("status", h.state.toString());
+            if (h.latency >= 0) {
+                o.put("latency", h.latency);
+            }
+            o.put("resources", h.resources);
+            o.put("error", h.error);
+            a.put(o);
+        }
+        return a;
+    }
+
+    public synchronized void write(OcfWriter writer) throws JSONException {
+        writer.beginArray();
+        for (Host h: this.hosts.values()) {
+            writer.beginObject();
+            writer.property("host", h.host);
+            writer.property("status", h.state.toString());
+            if (h.latency >= 0) {
+                writer.property("latency", h.latency);
+            }
+            writer.property("resources", h.resources);
+            writer.property("error", h.error);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+}
@@ -0,0 +1,155 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Which resources a discovery is after, from the `findResources` options:
+//
+//  * `resourceTypes`: any of these types (or `resourceType`, for one).
+//  * `interfaces`: any of these interfaces.
+//  * `pathPrefixes`: a path starting with any of these.
+//  * `exclude`: no path matching any of these patterns, where "*" matches
+//    any characters. Defaults to the platform, device and security
+//    resources.
+//
+// What can be expressed in discovery queries is sent to the devices, as one
+// query per resource type; the rest is checked as resources are found,
+// before they are registered or reported.
+public class OcfDiscoveryFilter {
+    public static final List<String> DEFAULT_EXCLUDE = Arrays.asList(
+        "/oic/p", "/oic/d", "/oic/sec/doxm", "/oic/sec/pstat");
+
+    private final List<String> resourceTypes;
+    private final List<String> interfaces;
+    private final List<String> pathPrefixes;
+    private final List<Pattern> exclude = new ArrayList<Pattern>();
+
+    public OcfDiscoveryFilter(
+        List<String> resourceTypes, List<String> interfaces,
+        List<String> pathPrefixes, List<String> exclude)
+    {
+        this.resourceTypes = resourceTypes;
+        this.interfaces = interfaces;
+        this.pathPrefixes = pathPrefixes;
+        for (String pattern: exclude) {
+            this.exclude.add(globToPattern(pattern));
+        }
+    }
+
+    public static OcfDiscoveryFilter fromJSON(JSONObject obj) throws JSONException {
+        List<String> resourceTypes = getStrings(obj, "resourceTypes");
+        String resourceType = obj != null ? obj.optString("resourceType") : "";
+        if (resourceType.length() > 0 && !resourceTypes.contains(resourceType)) {
+            resourceTypes.add(resourceType);
+        }
+
+        List<String> exclude = DEFAULT_EXCLUDE;
+        if (obj != null && obj.has("exclude")) {
+            exclude = getStrings(obj, "exclude");
+        }
+
+        return new OcfDiscoveryFilter(
+            resourceTypes,
+            getStrings(obj, "interfaces"),
+            getStrings(obj, "pathPrefixes"),
+            exclude);
+    }
+
+    private static List<String> getStrings(JSONObject obj, String name)
+        throws JSONException
+    {
+        List<String> strings = new ArrayList<String>();
+        JSONArray a = obj != null ? obj.optJSONArray(name) : null;
+        if (a != null) {
+            for (int i = 0; i < a.length(); i++) {
+                strings.add(a.getString(i));
+            }
+        }
+        return strings;
+    }
+
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (String part: glob.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    // The discovery queries to send, all at once: the union of their
+    // answers is what we are after.
+    public List<String> getQueries(String baseQuery) {
+        List<String> queries = new ArrayList<String>();
+
+        if (!this.resourceTypes.isEmpty()) {
+            for (String resourceType: this.resourceTypes) {
+                queries.add(baseQuery + "?rt=" + resourceType);
+            }
+        } else if (this.interfaces.size() == 1) {
+            queries.add(baseQuery + "?if=" + this.interfaces.get(0));
+        } else {
+            queries.add(baseQuery);
+        }
+
+        return queries;
+    }
+
+    public boolean matches(
+        String path, List<String> resourceTypes, List<String> interfaces)
+    {
+        for (Pattern pattern: this.exclude) {
+            if (pattern.matcher(path).matches()) {
+                return false;
+            }
+        }
+
+        if (!this.pathPrefixes.isEmpty()) {
+            boolean prefixed = false;
+            for (String prefix: this.pathPrefixes) {
+                if (path.startsWith(prefix)) {
+                    prefixed = true;
+                    break;
+                }
+            }
+            if (!prefixed) {
+                return false;
+            }
+        }
+
+        return intersects(this.resourceTypes, resourceTypes) &&
+            intersects(this.interfaces, interfaces);
+    }
+
+    public boolean matches(OcfResource resource) {
+        return this.matches(resource.getId().getResourcePath(),
+            resource.getResourceTypes(), resource.getInterfaces());
+    }
+
+    // Whether any of `values` is `wanted`, when anything is.
+    private static boolean intersects(List<String> wanted, List<String> values) {
+        if (wanted.isEmpty()) {
+            return true;
+        }
+        if (values == null) {
+            return false;
+        }
+        for (String value: values) {
+            if (wanted.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,361 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Cordova
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// The `findResources` calls in progress. Each call opens a session, named
+// by its `requestId` option, with its own filter, callback and format, so
+// that concurrent discoveries don't get each other's results. Backends tag
+// the queries of a session with it, and hand what they find to `report`,
+// which costs a lookup. A session reports each resource at most once.
+//
+// A session with a `timeout` (ms) completes when it expires; others stay
+// open, to carry lost resource events, until `MAX_OPEN` newer sessions push
+// them out. Any session can be cancelled. The last message of a session is
+// an `OcfDiscoveryCompleteEvent`, which closes its callback.
+//
+// A session may instead target a list of hosts, `deviceIds`, which are
+// sent unicast queries `maxInFlight` at a time (see `OcfDiscoveryFanOut`).
+// It completes once every host has answered, failed or been silent for
+// `hostTimeout` ms, if its `timeout` doesn't expire first. As a host's
+// answer comes as one callback per resource, and possibly one per query,
+// completion waits `linger` more ms for the rest of it.
+public class OcfDiscoverySessions {
+    public static final int MAX_OPEN = 32;
+    public static final long DEFAULT_LINGER = 250;
+
+    // Sends the discovery queries of a session to `host`.
+    public interface Prober {
+        public void probe(Session session, String host);
+    }
+
+    public static class Session {
+        private final String id;
+        private final String deviceId;
+        private final OcfDiscoveryFilter filter;
+        private final CallbackContext cc;
+        private final String format;
+        private final long start = System.nanoTime();
+        private final Set<String> reported =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private OcfDiscoveryFanOut fanOut;
+        private long linger;
+        private boolean completing = false;
+        private Prober prober;
+        private ScheduledFuture<?> deadline;
+        private boolean open = true;
+
+        private Session(
+            String id, String deviceId, OcfDiscoveryFilter filter,
+            CallbackContext cc, String format)
+        {
+            this.id = id;
+            this.deviceId = deviceId;
+            this.filter = filter;
+            this.cc = cc;
+            this.format = format;
+        }
+
+        public String getId() { return this.id; }
+
+        public String getDeviceId() { return this.deviceId; }
+
+        public OcfDiscoveryFilter getFilter() { return this.filter; }
+
+        // Whether the session targets a list of hosts.
+        public boolean isFanOut() { return this.fanOut != null; }
+
+        public synchronized boolean isOpen() { return this.open; }
+
+        // Unicast sessions have queries of their own, so whatever they
+        // find is from their host: its device ID needn't be compared, which
+        // backends may spell differently anyway.
+        public boolean matches(OcfResource resource) {
+            return this.filter.matches(resource);
+        }
+
+        // Whether a resource on `deviceId`, in whatever form, is on a host
+        // the session targets.
+        public boolean targets(String deviceId) {
+            if (this.fanOut != null) {
+                return this.fanOut.hasHost(deviceId);
+            }
+            return this.deviceId.length() == 0 ||
+                OcfDiscoveryFanOut.getAddress(this.deviceId).equals(
+                    OcfDiscoveryFanOut.getAddress(deviceId));
+        }
+    }
+
+    private final ConcurrentMap<String, Session> sessions =
+        new ConcurrentHashMap<String, Session>();
+    // Open sessions, oldest first.
+    private final Queue<Session> order = new ConcurrentLinkedQueue<Session>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final OcfMetrics metrics;
+
+    private ScheduledExecutorService scheduler;
+    private boolean closed = false;
+
+
+    public OcfDiscoverySessions(OcfMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Opens a session for the `findResources` `options`. A session with the
+    // same `requestId` is replaced.
+    public Session open(JSONObject options, CallbackContext cc) throws JSONException {
+        String id = options.optString("requestId");
+        if (id.length() == 0) {
+            id = "native-" + this.nextId.getAndIncrement();
+        }
+
+        final Session session = new Session(
+            id, options.optString("deviceId"), OcfDiscoveryFilter.fromJSON(options),
+            cc, OcfWriter.getFormat(options));
+
+        long timeout = options.optLong("timeout", 0);
+        JSONArray hosts = options.optJSONArray("deviceIds");
+        if (hosts != null) {
+            List<String> list = new ArrayList<String>();
+            for (int i = 0; i < hosts.length(); i++) {
+                list.add(hosts.getString(i));
+            }
+            session.fanOut = new OcfDiscoveryFanOut(
+                list,
+                options.optInt("maxInFlight", OcfDiscoveryFanOut.DEFAULT_MAX_IN_FLIGHT),
+                options.optLong("hostTimeout",
+                    timeout > 0 ? timeout : OcfDiscoveryFanOut.DEFAULT_HOST_TIMEOUT),
+                this.metrics.histogram("discovery.host"));
+            session.linger = Math.max(0, options.optLong("linger", DEFAULT_LINGER));
+        }
+
+        Session replaced = this.sessions.put(id, session);
+        this.order.add(session);
+        if (replaced != null) {
+            this.complete(replaced, "replaced");
+        }
+        while (this.sessions.size() > MAX_OPEN) {
+            Session oldest = this.order.peek();
+            if (oldest == null || oldest == session) {
+                break;
+            }
+            this.complete(oldest, "evicted");
+        }
+        this.metrics.counter("discovery.sessions").incrementAndGet();
+
+        if (timeout > 0) {
+            final OcfDiscoverySessions self = this;
+            ScheduledFuture<?> deadline = this.schedule(new Runnable() {
+                public void run() {
+                    self.metrics.counter("discovery.sessionsExpired").incrementAndGet();
+                    self.complete(session, "timeout");
+                }
+            }, timeout);
+            synchronized (session) {
+                session.deadline = deadline;
+            }
+        }
+
+        return session;
+    }
+
+    // Starts sending the queries of a fan-out session, through `prober`.
+    public void start(Session session, Prober prober) {
+        session.prober = prober;
+        this.advance(session);
+    }
+
+    // Any answer of `host`, for the session that queried it.
+    public void hostAnswered(Session session, String host) {
+        if (session.fanOut != null && session.fanOut.answered(host)) {
+            this.advance(session);
+        }
+    }
+
+    public void hostFailed(Session session, String host, String error) {
+        if (session.fanOut != null && session.fanOut.failed(host, error)) {
+            this.advance(session);
+        }
+    }
+
+    // Queries the hosts that have a free slot, or completes the session if
+    // they have all had their turn.
+    private void advance(final Session session) {
+        if (!session.isOpen()) {
+            return;
+        }
+
+        final OcfDiscoverySessions self = this;
+        for (final String host: session.fanOut.next()) {
+            this.schedule(new Runnable() {
+                public void run() {
+                    if (session.fanOut.timedOut(host)) {
+                        self.advance(session);
+                    }
+                }
+            }, session.fanOut.getHostTimeout());
+            session.prober.probe(session, host);
+        }
+
+        if (session.fanOut.isDone()) {
+            synchronized (session) {
+                if (session.completing) {
+                    return;
+                }
+                session.completing = true;
+            }
+            this.schedule(new Runnable() {
+                public void run() {
+                    self.complete(session, "complete");
+                }
+            }, session.linger);
+        }
+    }
+
+    // Returns null for unknown or completed sessions.
+    public Session get(String id) {
+        return this.sessions.get(id);
+    }
+
+    public Collection<Session> getSessions() {
+        return this.sessions.values();
+    }
+
+    public int size() {
+        return this.sessions.size();
+    }
+
+    public boolean cancel(String id) {
+        Session session = this.sessions.get(id);
+        return session != null && this.complete(session, "cancelled");
+    }
+
+    // Reports a live `resource` to `session`, if it is after it and hasn't
+    // been told yet.
+    public void report(Session session, OcfResource resource) {
+        if (session.isOpen() && session.matches(resource) &&
+            session.reported.add(resource.getId().getUniqueKey()))
+        {
+            this.send(session, new OcfResourceEvent(resource), true);
+        }
+    }
+
+    // Reports a resource remembered from a previous run, which live
+    // discovery may report again.
+    public void reportStale(Session session, OcfResource resource) {
+        if (session.matches(resource) &&
+            session.targets(resource.getId().getDeviceId()))
+        {
+            this.send(session, new OcfResourceEvent(resource, true), true);
+        }
+    }
+
+    // Tells a single session, as the frontend keeps a single list of
+    // resources, whichever session found them: preferably one that
+    // reported the resource.
+    public void reportLost(OcfResourceId id) {
+        String key = id.getUniqueKey();
+        Session target = null;
+        for (Session session: this.sessions.values()) {
+            if (session.reported.remove(key)) {
+                target = session;
+            } else if (target == null) {
+                target = session;
+            }
+        }
+        if (target != null) {
+            this.send(target, new OcfResourceLostEvent(id), true);
+        }
+    }
+
+    // Completes all the sessions, e.g. when switching backends.
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            if (this.scheduler != null) {
+                this.scheduler.shutdownNow();
+            }
+        }
+        for (Session session: new ArrayList<Session>(this.sessions.values())) {
+            this.complete(session, "closed");
+        }
+    }
+
+    private boolean complete(Session session, String reason) {
+        synchronized (session) {
+            if (!session.open) {
+                return false;
+            }
+            session.open = false;
+            if (session.deadline != null) {
+                session.deadline.cancel(false);
+            }
+        }
+        this.sessions.remove(session.id, session);
+        this.order.remove(session);
+
+        this.send(session, new OcfDiscoveryCompleteEvent(
+            session.id, reason, session.reported.size(),
+            (System.nanoTime() - session.start) / 1000000, session.fanOut), false);
+        return true;
+    }
+
+    private void send(Session session, OcfObjectInterface ev, boolean keepCallback) {
+        try {
+            PluginResult result = OcfPluginResults.encode(
+                ev, session.format, this.metrics, "findResources");
+            result.setKeepCallback(keepCallback);
+            session.cc.sendPluginResult(result);
+        } catch (JSONException ex) {
+            session.cc.error(ex.getMessage());
+        }
+    }
+
+    private synchronized ScheduledFuture<?> schedule(Runnable task, long delay) {
+        if (this.closed) {
+            return null;
+        }
+
+        if (this.scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OcfDiscoverySessions");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        try {
+            return this.scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// The plugin's own thread pool, so that discovery bursts don't starve the
+// Cordova pool shared with other plugins. Tasks are run by priority: user
+// initiated operations first, then background property prefetches, then
+// discovery.
+//
+// Native GETs and PUTs only take a moment of a thread to start, and the
+// network work happens after that. So they go through `request` instead:
+// at most `maxInFlight` of them are outstanding, and the others wait, by
+// priority, until one is done. This way, a burst of prefetches can't delay
+// a user request by more than one slot.
+//
+// Tasks and requests that wait together are bounded by `maxQueued`. Past
+// that, `execute` and `request` throw `RejectedExecutionException`.
+public class OcfExecutor {
+    public enum Priority {
+        USER, PREFETCH, DISCOVERY;
+
+        public String toString() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_MAX_QUEUED = 1000;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private class Task implements Runnable, Comparable<Task> {
+        final Priority priority;
+        final long seq;
+        final long enqueuedAt;
+        final Runnable runnable;
+
+        Task(Priority priority, Runnable runnable) {
+            this.priority = priority;
+            this.seq = nextSeq.getAndIncrement();
+            this.enqueuedAt = System.nanoTime();
+            this.runnable = runnable;
+        }
+
+        public int compareTo(Task other) {
+            if (this.priority != other.priority) {
+                return this.priority.ordinal() - other.priority.ordinal();
+            }
+            return this.seq < other.seq ? -1 : (this.seq == other.seq ? 0 : 1);
+        }
+
+        public void run() {
+            long startedAt = System.nanoTime();
+            queueSlots.release();
+            queued[this.priority.ordinal()].decrementAndGet();
+            try {
+                this.runnable.run();
+            } finally {
+                stats[this.priority.ordinal()].record(
+                    startedAt - this.enqueuedAt, System.nanoTime() - startedAt);
+            }
+        }
+    }
+
+    private static class Stats {
+        final AtomicLong executed = new AtomicLong(0);
+        final AtomicLong rejected = new AtomicLong(0);
+        final AtomicLong totalWait = new AtomicLong(0);
+        final AtomicLong maxWait = new AtomicLong(0);
+        final AtomicLong totalRun = new AtomicLong(0);
+        final AtomicLong maxRun = new AtomicLong(0);
+
+        void record(long wait, long run) {
+            this.executed.incrementAndGet();
+            this.totalWait.addAndGet(wait);
+            this.totalRun.addAndGet(run);
+            updateMax(this.maxWait, wait);
+            updateMax(this.maxRun, run);
+        }
+
+        JSONObject toJSON(int queued) throws JSONException {
+            long executed = this.executed.get();
+            JSONObject o = new JSONObject();
+            o.put("queued", queued);
+            o.put("executed", executed);
+            o.put("rejected", this.rejected.get());
+            o.put("avgWaitMs", executed > 0 ? this.totalWait.get() / executed / 1e6 : 0);
+            o.put("maxWaitMs", this.maxWait.get() / 1e6);
+            o.put("avgRunMs", executed > 0 ? this.totalRun.get() / executed / 1e6 : 0);
+            o.put("maxRunMs", this.maxRun.get() / 1e6);
+            return o;
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+    }
+
+    private final AtomicLong nextSeq = new AtomicLong(0);
+    private final AtomicInteger[] queued = new AtomicInteger[Priority.values().length];
+    private final Stats[] stats = new Stats[Priority.values().length];
+    private final int threads;
+    private final int maxQueued;
+    private final int maxInFlight;
+    private final ThreadPoolExecutor pool;
+
+    // One permit per task or request waiting, so that the bound holds
+    // whatever the number of callers.
+    private final Semaphore queueSlots;
+
+    // Requests waiting for one of the `maxInFlight` slots, guarded by
+    // itself, as is `inFlight`.
+    private final PriorityQueue<Task> waiting = new PriorityQueue<Task>();
+    private int inFlight = 0;
+
+    public OcfExecutor(int threads, int maxQueued) {
+        this(threads, maxQueued, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public OcfExecutor(int threads, int maxQueued, int maxInFlight) {
+        this.threads = Math.max(1, threads);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queueSlots = new Semaphore(this.maxQueued);
+
+        for (int i = 0; i < this.stats.length; i++) {
+            this.queued[i] = new AtomicInteger(0);
+            this.stats[i] = new Stats();
+        }
+
+        this.pool = new ThreadPoolExecutor(
+            this.threads, this.threads, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OcfExecutor-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    public void execute(Priority priority, Runnable runnable) {
+        this.acquire(priority);
+        this.dispatch(new Task(priority, runnable));
+    }
+
+    // Runs `issue`, which starts a native request, once fewer than
+    // `maxInFlight` requests are outstanding. The caller must call
+    // `requestDone` once that request is over, however it ends, to let
+    // the next one go.
+    public void request(Priority priority, Runnable issue) {
+        this.acquire(priority);
+
+        Task task = new Task(priority, issue);
+        synchronized (this.waiting) {
+            if (this.inFlight >= this.maxInFlight) {
+                this.waiting.add(task);
+                return;
+            }
+            this.inFlight++;
+        }
+
+        try {
+            this.dispatch(task);
+        } catch (RejectedExecutionException ex) {
+            this.requestDone();
+            throw ex;
+        }
+    }
+
+    public void requestDone() {
+        Task next;
+        synchronized (this.waiting) {
+            next = this.waiting.poll();
+            if (next == null) {
+                this.inFlight = Math.max(0, this.inFlight - 1);
+                return;
+            }
+        }
+
+        try {
+            this.dispatch(next);
+        } catch (RejectedExecutionException ex) {
+            // Shut down: the request is dropped with the pool.
+            this.requestDone();
+        }
+    }
+
+    private void acquire(Priority priority) {
+        if (!this.queueSlots.tryAcquire()) {
+            this.stats[priority.ordinal()].rejected.incrementAndGet();
+            throw new RejectedExecutionException(
+                "Too many pending operations (" + this.maxQueued + ")");
+        }
+        this.queued[priority.ordinal()].incrementAndGet();
+    }
+
+    private void dispatch(Task task) {
+        try {
+            this.pool.execute(task);
+        } catch (RejectedExecutionException ex) {
+            this.queueSlots.release();
+            this.queued[task.priority.ordinal()].decrementAndGet();
+            this.stats[task.priority.ordinal()].rejected.incrementAndGet();
+            throw ex;
+        }
+    }
+
+    // Tasks and requests waiting.
+    public int getQueueDepth() {
+        return this.maxQueued - this.queueSlots.availablePermits();
+    }
+
+    public int getInFlightCount() {
+        synchronized (this.waiting) {
+            return this.inFlight;
+        }
+    }
+
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject priorities = new JSONObject();
+        for (Priority priority: Priority.values()) {
+            priorities.put(priority.toString(),
+                this.stats[priority.ordinal()].toJSON(this.queued[priority.ordinal()].get()));
+        }
+
+        JSONObject o = new JSONObject();
+        o.put("threads", this.threads);
+        o.put("maxQueued", this.maxQueued);
+        o.put("queueDepth", this.getQueueDepth());
+        o.put("active", this.pool.getActiveCount());
+        o.put("maxInFlight", this.maxInFlight);
+        o.put("inFlight", this.getInFlightCount());
+        o.put("priorities", priorities);
+        return o;
+    }
+}
@@ -0,0 +1,400 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A simulated fleet of OCF devices, for load testing without a network or
+// Iotivity: `devices` devices with `resourcesPerDevice` resources each, of a
+// mix of common resource types and property shapes.
+//
+// Everything is derived from `seed`: the fleet, the order and timing of
+// discovery responses, which resources get observe notifications and their
+// values, and PUT latencies. Each device answers a discovery after a random
+// delay within `discoveryWindow` ms, with all its resources at once, like a
+// real /oic/res response. Resources the listener observes get
+// `observeRate` notifications per second on average. PUTs complete after
+// `putLatency` ms, give or take `putLatencyJitter`, and are echoed back as
+// notifications.
+//
+// This is plain Java, so it can run on any JVM (see the benchmarks).
+// Callbacks come from the simulator's own thread, and get copies of the
+// simulated resources.
+public class OcfFleetSimulator {
+    public interface Listener {
+        public void onDeviceFound(OcfDevice device);
+        public void onResourceFound(String requestId, OcfResource resource);
+        public void onResourceUpdate(String key, OcfResourceRepresentation repr);
+    }
+
+    public interface PutCallback {
+        public void onPutCompleted(OcfResource resource);
+        public void onPutFailed(String reason);
+    }
+
+    public static class Config {
+        public int devices = 10;
+        public int resourcesPerDevice = 5;
+        public long seed = 1;
+        public int discoveryWindow = 1000;
+        public double observeRate = 0.2;
+        public int putLatency = 50;
+        public int putLatencyJitter = 25;
+
+        public static Config fromJSON(JSONObject obj) throws JSONException {
+            Config config = new Config();
+            if (obj != null) {
+                config.devices = obj.optInt("devices", config.devices);
+                config.resourcesPerDevice = obj.optInt(
+                    "resourcesPerDevice", config.resourcesPerDevice);
+                config.seed = obj.optLong("seed", config.seed);
+                config.discoveryWindow = obj.optInt(
+                    "discoveryWindow", config.discoveryWindow);
+                config.observeRate = obj.optDouble("observeRate", config.observeRate);
+                config.putLatency = obj.optInt("putLatency", config.putLatency);
+                config.putLatencyJitter = obj.optInt(
+                    "putLatencyJitter", config.putLatencyJitter);
+            }
+            return config;
+        }
+    }
+
+    // Observe notifications are generated in ticks of this many ms.
+    private static final int TICK = 10;
+
+    private static final String[] RESOURCE_TYPES = {
+        "oic.r.switch.binary",
+        "oic.r.light.brightness",
+        "oic.r.temperature",
+        "oic.r.humidity",
+        "oic.r.colour.rgb",
+        "oic.r.sensor.motion",
+        "oic.r.energy.consumption"
+    };
+
+    private static class Device {
+        OcfDevice device;
+        List<OcfResource> resources = new ArrayList<OcfResource>();
+    }
+
+    private final Config config;
+    private final Listener listener;
+    private final List<Device> devices = new ArrayList<Device>();
+    private final Map<String, OcfResource> resources = new HashMap<String, OcfResource>();
+
+    // Only touched from the simulator thread, so the sequence of
+    // notifications only depends on the seed.
+    private final Random observeRandom;
+    private final List<OcfResource> observed = new ArrayList<OcfResource>();
+    private final Set<String> observedKeys = new HashSet<String>();
+    private double observeBacklog = 0;
+
+    private final Random putRandom;
+    private int discoveries = 0;
+
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OcfFleetSimulator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+
+    public OcfFleetSimulator(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+
+        Random random = new Random(config.seed);
+        for (int i = 0; i < config.devices; i++) {
+            this.devices.add(this.generateDevice(random, i));
+        }
+
+        this.observeRandom = new Random(config.seed * 31 + 1);
+        this.putRandom = new Random(config.seed * 31 + 2);
+
+        if (config.observeRate > 0) {
+            this.scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    tick();
+                }
+            }, TICK, TICK, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Config getConfig() { return this.config; }
+
+    public boolean hasResource(String key) {
+        return this.resources.containsKey(key);
+    }
+
+    public int getResourceCount() {
+        return this.config.devices * this.config.resourcesPerDevice;
+    }
+
+    public void stop() {
+        this.scheduler.shutdownNow();
+    }
+
+    // ------------------------------------------------------------------------
+    // Discovery
+    // ------------------------------------------------------------------------
+
+    public void discoverDevices() {
+        final Random random = this.nextDiscoveryRandom();
+        for (final Device device: this.devices) {
+            this.schedule(new Runnable() {
+                public void run() {
+                    listener.onDeviceFound(device.device);
+                }
+            }, this.nextDiscoveryDelay(random));
+        }
+    }
+
+    // Finds the resources of `deviceId` (or of all devices, if empty)
+    // matching `filter` (or all of them, if null). They are reported with
+    // `requestId`, like answers to a discovery query.
+    public void discoverResources(
+        final String requestId, final String deviceId, final OcfDiscoveryFilter filter)
+    {
+        final Random random = this.nextDiscoveryRandom();
+        for (final Device device: this.devices) {
+            if (deviceId != null && deviceId.length() > 0 &&
+                !deviceId.equals(device.device.getUrl()))
+            {
+                continue;
+            }
+
+            this.schedule(new Runnable() {
+                public void run() {
+                    for (OcfResource resource: device.resources) {
+                        if (filter == null || filter.matches(resource)) {
+                            onResourceDiscovered(requestId, resource);
+                        }
+                    }
+                }
+            }, this.nextDiscoveryDelay(random));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Updates
+    // ------------------------------------------------------------------------
+
+    public void put(final OcfResource update, final PutCallback callback) {
+        int latency;
+        synchronized (this.putRandom) {
+            latency = this.config.putLatency + (this.config.putLatencyJitter > 0 ?
+                this.putRandom.nextInt(2 * this.config.putLatencyJitter + 1) -
+                this.config.putLatencyJitter : 0);
+        }
+
+        this.schedule(new Runnable() {
+            public void run() {
+                OcfResource resource = resources.get(update.getId().getUniqueKey());
+                if (resource == null) {
+                    callback.onPutFailed("No such resource");
+                    return;
+                }
+
+                OcfResourceRepresentation repr;
+                synchronized (resource) {
+                    resource.getProperties().putAll(update.getProperties());
+                    repr = resource.getProperties().copy();
+                }
+
+                callback.onPutCompleted(update);
+                listener.onResourceUpdate(resource.getId().getUniqueKey(), repr);
+            }
+        }, Math.max(0, latency));
+    }
+
+    // ------------------------------------------------------------------------
+    // Observation
+    // ------------------------------------------------------------------------
+
+    // Returns whether `key` is an observable resource of the fleet.
+    public boolean observe(String key) {
+        OcfResource resource = this.resources.get(key);
+        if (resource == null || !resource.getObservable()) {
+            return false;
+        }
+
+        synchronized (this.observed) {
+            if (this.observedKeys.add(key)) {
+                this.observed.add(resource);
+            }
+        }
+        return true;
+    }
+
+    public void cancelObserve(String key) {
+        synchronized (this.observed) {
+            if (this.observedKeys.remove(key)) {
+                this.observed.remove(this.resources.get(key));
+            }
+        }
+    }
+
+    private void tick() {
+        List<OcfResource> notified = new ArrayList<OcfResource>();
+        List<OcfResourceRepresentation> reprs = new ArrayList<OcfResourceRepresentation>();
+
+        synchronized (this.observed) {
+            if (this.observed.isEmpty()) {
+                return;
+            }
+
+            this.observeBacklog +=
+                this.observed.size() * this.config.observeRate * TICK / 1000.0;
+            while (this.observeBacklog >= 1) {
+                this.observeBacklog--;
+
+                OcfResource resource = this.observed.get(
+                    this.observeRandom.nextInt(this.observed.size()));
+                OcfResourceRepresentation repr;
+                synchronized (resource) {
+                    mutate(resource, this.observeRandom);
+                    repr = resource.getProperties().copy();
+                }
+                notified.add(resource);
+                reprs.add(repr);
+            }
+        }
+
+        // Outside the lock, as listeners may observe or cancel in turn.
+        for (int i = 0; i < notified.size(); i++) {
+            this.listener.onResourceUpdate(
+                notified.get(i).getId().getUniqueKey(), reprs.get(i));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    // Runs on the simulator thread.
+    private void onResourceDiscovered(String requestId, OcfResource resource) {
+        this.listener.onResourceFound(requestId, snapshot(resource));
+    }
+
+    private static OcfResource snapshot(OcfResource resource) {
+        OcfResource copy = new OcfResource(
+            resource.getId().getDeviceId(), resource.getId().getResourcePath());
+        copy.setResourceTypes(resource.getResourceTypes());
+        copy.setInterfaces(resource.getInterfaces());
+        copy.setMediaTypes(resource.getMediaTypes());
+        copy.setObservable(resource.getObservable());
+        synchronized (resource) {
+            copy.getProperties().putAll(resource.getProperties());
+        }
+        return copy;
+    }
+
+    private synchronized Random nextDiscoveryRandom() {
+        return new Random(this.config.seed * 31 + 3 + this.discoveries++);
+    }
+
+    private int nextDiscoveryDelay(Random random) {
+        return this.config.discoveryWindow > 0 ?
+            random.nextInt(this.config.discoveryWindow) : 0;
+    }
+
+    private void schedule(Runnable runnable, int delay) {
+        if (!this.scheduler.isShutdown()) {
+            this.scheduler.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Device generateDevice(Random random, int index) {
+        Device device = new Device();
+        String url = "coap://10." + (index >> 16 & 0xff) + "." +
+            (index >> 8 & 0xff) + "." + (index & 0xff) + ":5683";
+
+        device.device = new OcfDevice();
+        device.device.setUuid(new UUID(random.nextLong(), random.nextLong()).toString());
+        device.device.setUrl(url);
+        device.device.setName("Simulated device " + index);
+        device.device.setDataModels(new ArrayList<String>(Arrays.asList("ocf.res.1.3.0")));
+        device.device.setCoreSpecVersion("ocf.1.3.0");
+        device.device.setRole("server");
+
+        for (int i = 0; i < this.config.resourcesPerDevice; i++) {
+            String type = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)];
+            OcfResource resource = new OcfResource(url, "/" + type.substring(6) + "/" + i);
+            resource.setResourceTypes(new ArrayList<String>(Arrays.asList(type)));
+            resource.setInterfaces(new ArrayList<String>(
+                Arrays.asList("oic.if.baseline", "oic.if.a")));
+            resource.setMediaTypes(new ArrayList<String>(
+                Arrays.asList("application/vnd.ocf+cbor")));
+            resource.setObservable(random.nextInt(10) < 9);
+            initialize(resource, type, random);
+
+            device.resources.add(resource);
+            this.resources.put(resource.getId().getUniqueKey(), resource);
+        }
+
+        return device;
+    }
+
+    private static void initialize(OcfResource resource, String type, Random random) {
+        if ("oic.r.switch.binary".equals(type) || "oic.r.sensor.motion".equals(type)) {
+            resource.setProperty("value", random.nextBoolean());
+        } else if ("oic.r.light.brightness".equals(type)) {
+            resource.setProperty("brightness", random.nextInt(101));
+        } else if ("oic.r.temperature".equals(type)) {
+            resource.setProperty("temperature", 15 + random.nextInt(150) / 10.0);
+            resource.setProperty("units", "C");
+            resource.setProperty("range", new double[] {-40.0, 125.0});
+        } else if ("oic.r.humidity".equals(type)) {
+            resource.setProperty("humidity", random.nextInt(101));
+        } else if ("oic.r.colour.rgb".equals(type)) {
+            resource.setProperty("rgbValue", new int[] {
+                random.nextInt(256), random.nextInt(256), random.nextInt(256)});
+            resource.setProperty("range", new int[] {0, 255});
+        } else {
+            resource.setProperty("power", random.nextInt(20000) / 10.0);
+            resource.setProperty("energy", random.nextInt(1000000) / 100.0);
+        }
+    }
+
+    // Changes the main property of `resource`, the way its device would.
+    private static void mutate(OcfResource resource, Random random) {
+        String type = resource.getResourceTypes().get(0);
+        OcfResourceRepresentation props = resource.getProperties();
+
+        if ("oic.r.switch.binary".equals(type) || "oic.r.sensor.motion".equals(type)) {
+            props.setBoolean("value", !props.getBoolean("value", false));
+        } else if ("oic.r.light.brightness".equals(type)) {
+            props.setInt("brightness", random.nextInt(101));
+        } else if ("oic.r.temperature".equals(type)) {
+            props.setDouble("temperature", 15 + random.nextInt(150) / 10.0);
+        } else if ("oic.r.humidity".equals(type)) {
+            props.setInt("humidity", random.nextInt(101));
+        } else if ("oic.r.colour.rgb".equals(type)) {
+            props.setValue("rgbValue", new int[] {
+                random.nextInt(256), random.nextInt(256), random.nextInt(256)});
+        } else {
+            props.setDouble("power", random.nextInt(20000) / 10.0);
+            props.setDouble("energy",
+                props.getDouble("energy", 0) + random.nextInt(100) / 100.0);
+        }
+    }
+}
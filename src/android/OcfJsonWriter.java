@@ -0,0 +1,279 @@
+package com.intel.cordova.plugin.ocf;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Writes JSON straight into a `StringBuilder`, producing exactly the same
+// text as `JSONObject.toString()` on the tree returned by `toJSON`: same key
+// order, no whitespace, same string escaping (including "\/") and same
+// number formatting.
+//
+// The result can be handed to `PluginResult` with `toJSONObject` or
+// `toJSONArray`: Cordova encodes a JSON message by calling its `toString()`,
+// which these return directly.
+//
+// Writers are not thread safe. `obtain` returns a per-thread writer whose
+// buffer is reused from one message to the next.
+public class OcfJsonWriter extends OcfWriter {
+    // Buffers grown past this are not kept around for reuse.
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0d);
+
+    private static final ThreadLocal<OcfJsonWriter> writers =
+        new ThreadLocal<OcfJsonWriter>() {
+            protected OcfJsonWriter initialValue() {
+                return new OcfJsonWriter();
+            }
+        };
+
+    private StringBuilder out = new StringBuilder(1024);
+
+    // Whether a comma is due before the next name or array element.
+    private boolean needsComma = false;
+
+    // A JSONObject whose content is already encoded. It must only be used as
+    // a message: it has no properties of its own.
+    private static class EncodedObject extends JSONObject {
+        private final String encoded;
+
+        EncodedObject(String encoded) {
+            this.encoded = encoded;
+        }
+
+        @Override
+        public String toString() {
+            return this.encoded;
+        }
+    }
+
+    // A JSONArray whose content is already encoded. Like `EncodedObject`, but
+    // it does report its length, so that callers can skip empty batches.
+    private static class EncodedArray extends JSONArray {
+        private final String encoded;
+        private final int length;
+
+        EncodedArray(String encoded, int length) {
+            this.encoded = encoded;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public String toString() {
+            return this.encoded;
+        }
+    }
+
+    public static OcfJsonWriter obtain() {
+        OcfJsonWriter writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    // Encodes `value` the way `value.toJSON()` would be sent.
+    public static JSONObject encode(OcfObjectInterface value) throws JSONException {
+        OcfJsonWriter writer = obtain();
+        value.write(writer);
+        return writer.toJSONObject();
+    }
+
+    public void reset() {
+        if (this.out.capacity() > MAX_RETAINED_CAPACITY) {
+            this.out = new StringBuilder(1024);
+        } else {
+            this.out.setLength(0);
+        }
+        this.needsComma = false;
+    }
+
+    public JSONObject toJSONObject() {
+        return new EncodedObject(this.out.toString());
+    }
+
+    public JSONArray toJSONArray(int length) {
+        return new EncodedArray(this.out.toString(), length);
+    }
+
+    public int size() {
+        return this.out.length();
+    }
+
+    @Override
+    public String toString() {
+        return this.out.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // OcfWriter
+    // ------------------------------------------------------------------------
+
+    public OcfWriter beginObject() {
+        this.separate();
+        this.out.append('{');
+        this.needsComma = false;
+        return this;
+    }
+
+    public OcfWriter endObject() {
+        this.out.append('}');
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter beginArray() {
+        this.separate();
+        this.out.append('[');
+        this.needsComma = false;
+        return this;
+    }
+
+    public OcfWriter endArray() {
+        this.out.append(']');
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter name(String name) {
+        this.separate();
+        this.string(name);
+        this.out.append(':');
+        this.needsComma = false;
+        return this;
+    }
+
+    public OcfWriter value(String value) {
+        this.separate();
+        if (value == null) {
+            this.out.append("null");
+        } else {
+            this.string(value);
+        }
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter value(boolean value) {
+        this.separate();
+        this.out.append(value);
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter value(Number value) throws JSONException {
+        this.separate();
+        this.out.append(JSONObject.numberToString(value));
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter value(long value) {
+        this.separate();
+        this.out.append(value);
+        this.needsComma = true;
+        return this;
+    }
+
+    // Same output as `JSONObject.numberToString` for a `Double`.
+    public OcfWriter value(double value) throws JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("Forbidden numeric value: " + value);
+        }
+
+        this.separate();
+        long l = (long) value;
+        if (Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS) {
+            this.out.append("-0");
+        } else if (value == (double) l) {
+            this.out.append(l);
+        } else {
+            this.out.append(value);
+        }
+        this.needsComma = true;
+        return this;
+    }
+
+    public OcfWriter value(Object value) throws JSONException {
+        if (value instanceof String) {
+            return this.value((String) value);
+        } else if (value instanceof Boolean) {
+            return this.value(((Boolean) value).booleanValue());
+        } else if (value instanceof Number) {
+            return this.value((Number) value);
+        } else if (value instanceof OcfObjectInterface) {
+            return this.value((OcfObjectInterface) value);
+        }
+
+        this.separate();
+        if (value == null || value == JSONObject.NULL ||
+            value instanceof JSONObject || value instanceof JSONArray)
+        {
+            this.out.append(String.valueOf(value));
+        } else {
+            this.string(value.toString());
+        }
+        this.needsComma = true;
+        return this;
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private void separate() {
+        if (this.needsComma) {
+            this.out.append(',');
+        }
+    }
+
+    // Same escaping as org.json's JSONStringer.
+    private void string(String value) {
+        StringBuilder out = this.out;
+        out.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.append('\\').append(c);
+                    break;
+
+                case '\t':
+                    out.append("\\t");
+                    break;
+
+                case '\b':
+                    out.append("\\b");
+                    break;
+
+                case '\n':
+                    out.append("\\n");
+                    break;
+
+                case '\r':
+                    out.append("\\r");
+                    break;
+
+                case '\f':
+                    out.append("\\f");
+                    break;
+
+                default:
+                    if (c <= 0x1F) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,166 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Android
+import android.util.Log;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Tells resources that left the network from those that are merely quiet.
+// Backends report every sign of life of a resource (discovery responses,
+// notifications, GET and PUT responses) with `seen`, and a sweeper checks
+// every `sweepInterval` ms for resources idle longer than `ttl` ms. An idle
+// resource is first probed, if `probe` is set: the listener checks on it,
+// and reports the outcome with `seen` or `lost`. Without probing, or when a
+// probe gets no answer within another `ttl`, the resource is lost.
+//
+// A `ttl` of 0, the default, turns tracking off.
+public class OcfLivenessTracker {
+    public interface Listener {
+        // Checks whether `key` is still there, then calls `seen` or `lost`.
+        public void onResourceIdle(String key);
+        public void onResourceLost(String key);
+    }
+
+    public static class Config {
+        public long ttl = 0;
+        public long sweepInterval = 0;
+        public boolean probe = true;
+
+        public static Config fromJSON(JSONObject obj) throws JSONException {
+            Config config = new Config();
+            if (obj != null) {
+                config.ttl = Math.max(0, obj.optLong("ttl", config.ttl));
+                config.sweepInterval = Math.max(0,
+                    obj.optLong("sweepInterval", config.sweepInterval));
+                config.probe = obj.optBoolean("probe", config.probe);
+            }
+            if (config.sweepInterval == 0) {
+                config.sweepInterval = Math.max(1000, config.ttl / 4);
+            }
+            return config;
+        }
+    }
+
+    private final Config config;
+    private final Listener listener;
+    private final OcfMetrics metrics;
+
+    // Last sign of life of each tracked resource, and start of the pending
+    // probes, in ms.
+    private final ConcurrentMap<String, Long> lastSeen = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<String, Long> probing = new ConcurrentHashMap<String, Long>();
+
+    private ScheduledExecutorService scheduler;
+
+
+    public OcfLivenessTracker(Config config, Listener listener, OcfMetrics metrics) {
+        this.config = config;
+        this.listener = listener;
+        this.metrics = metrics;
+
+        if (config.ttl > 0) {
+            final OcfLivenessTracker self = this;
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OcfLivenessTracker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            this.scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        self.sweep();
+                    } catch (RuntimeException ex) {
+                        Log.e("CordovaPluginOCF", "Liveness sweep failed: " + ex.getMessage());
+                    }
+                }
+            }, config.sweepInterval, config.sweepInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.config.ttl > 0;
+    }
+
+    public void seen(String key) {
+        if (this.isEnabled()) {
+            this.lastSeen.put(key, now());
+            this.probing.remove(key);
+        }
+    }
+
+    public void lost(String key) {
+        this.probing.remove(key);
+        if (this.lastSeen.remove(key) != null) {
+            Log.d("CordovaPluginOCF", "Resource lost: " + key);
+            this.metrics.counter("liveness.lost").incrementAndGet();
+            this.listener.onResourceLost(key);
+        }
+    }
+
+    // Stops tracking `key`, without reporting it lost.
+    public void forget(String key) {
+        this.lastSeen.remove(key);
+        this.probing.remove(key);
+    }
+
+    public int size() {
+        return this.lastSeen.size();
+    }
+
+    public void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    private void sweep() {
+        long now = now();
+        List<String> idle = new ArrayList<String>();
+        List<String> lost = new ArrayList<String>();
+
+        for (Map.Entry<String, Long> entry: this.lastSeen.entrySet()) {
+            String key = entry.getKey();
+            if (now - entry.getValue() <= this.config.ttl) {
+                continue;
+            }
+
+            Long probeStart = this.probing.get(key);
+            if (!this.config.probe ||
+                (probeStart != null && now - probeStart > this.config.ttl))
+            {
+                lost.add(key);
+            } else if (probeStart == null) {
+                this.probing.put(key, now);
+                idle.add(key);
+            }
+        }
+
+        for (String key: lost) {
+            this.lost(key);
+        }
+        for (String key: idle) {
+            this.metrics.counter("liveness.probes").incrementAndGet();
+            this.listener.onResourceIdle(key);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
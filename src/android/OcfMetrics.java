@@ -0,0 +1,235 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Runtime metrics of the plugin, cheap enough to be always on: recording is
+// a handful of atomic operations, with no locks and no allocations. Metrics
+// are created on first use, by name; hot paths keep a reference to theirs.
+//
+//  * Histograms: latencies, with percentiles accurate to within 25%.
+//  * Counters: monotonic counts.
+//  * Groups: counters keyed by a runtime value, e.g. a resource type.
+//  * Gauges: current values (queue depths, registry sizes...), read when
+//    the metrics are reported.
+public class OcfMetrics {
+    public interface Gauge {
+        public long get();
+    }
+
+    // A log-linear histogram of microsecond values: every power of two is
+    // split into 4 buckets.
+    public static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong(0);
+        private final AtomicLong sum = new AtomicLong(0);
+        private final AtomicLong max = new AtomicLong(0);
+
+        public void record(long micros) {
+            long value = Math.max(0, micros);
+            this.buckets.incrementAndGet(bucketOf(value));
+            this.count.incrementAndGet();
+            this.sum.addAndGet(value);
+
+            long current = this.max.get();
+            while (value > current && !this.max.compareAndSet(current, value)) {
+                current = this.max.get();
+            }
+        }
+
+        // Records the time elapsed since `startNanos`, a `System.nanoTime()`.
+        public void recordSince(long startNanos) {
+            this.record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        // The upper bound of the bucket holding the `fraction` quantile.
+        public long getPercentile(double fraction) {
+            long count = this.count.get();
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), this.max.get());
+                }
+            }
+            return this.max.get();
+        }
+
+        // Values are reported in milliseconds.
+        public JSONObject toJSON() throws JSONException {
+            long count = this.count.get();
+            JSONObject o = new JSONObject();
+            o.put("count", count);
+            o.put("meanMs", count > 0 ? this.sum.get() / count / 1e3 : 0);
+            o.put("p50Ms", this.getPercentile(0.50) / 1e3);
+            o.put("p95Ms", this.getPercentile(0.95) / 1e3);
+            o.put("p99Ms", this.getPercentile(0.99) / 1e3);
+            o.put("maxMs", this.max.get() / 1e3);
+            return o;
+        }
+
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+
+            // value is in [2^exponent, 2^(exponent + 1)), with exponent >= 2.
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+        }
+
+        private static long upperBoundOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+
+            int exponent = bucket / SUB_BUCKETS + 1;
+            int sub = bucket % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+        }
+    }
+
+    public static class Group {
+        private final ConcurrentHashMap<String, AtomicLong> counters =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+        public void increment(String key) {
+            this.add(key, 1);
+        }
+
+        public void add(String key, long delta) {
+            AtomicLong counter = this.counters.get(key);
+            if (counter == null) {
+                counter = new AtomicLong(0);
+                AtomicLong existing = this.counters.putIfAbsent(key, counter);
+                if (existing != null) {
+                    counter = existing;
+                }
+            }
+            counter.addAndGet(delta);
+        }
+
+        public JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            for (Map.Entry<String, AtomicLong> entry: this.counters.entrySet()) {
+                o.put(entry.getKey(), entry.getValue().get());
+            }
+            return o;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Histogram> histograms =
+        new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentHashMap<String, AtomicLong> counters =
+        new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentHashMap<String, Group> groups =
+        new ConcurrentHashMap<String, Group>();
+    private final ConcurrentHashMap<String, Gauge> gauges =
+        new ConcurrentHashMap<String, Gauge>();
+
+    public Histogram histogram(String name) {
+        Histogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = this.histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    public AtomicLong counter(String name) {
+        AtomicLong counter = this.counters.get(name);
+        if (counter == null) {
+            counter = new AtomicLong(0);
+            AtomicLong existing = this.counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    public Group group(String name) {
+        Group group = this.groups.get(name);
+        if (group == null) {
+            group = new Group();
+            Group existing = this.groups.putIfAbsent(name, group);
+            if (existing != null) {
+                group = existing;
+            }
+        }
+        return group;
+    }
+
+    // Gauges belong to whoever registered them, usually the current backend:
+    // they are dropped with `clearGauges` when it goes away.
+    public void gauge(String name, Gauge gauge) {
+        this.gauges.put(name, gauge);
+    }
+
+    // Returns the gauges dropped, which `restoreGauges` puts back if their
+    // owner turns out to stay.
+    public Map<String, Gauge> clearGauges() {
+        Map<String, Gauge> gauges = new HashMap<String, Gauge>(this.gauges);
+        this.gauges.clear();
+        return gauges;
+    }
+
+    public void restoreGauges(Map<String, Gauge> gauges) {
+        this.gauges.clear();
+        this.gauges.putAll(gauges);
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, Histogram> entry: this.histograms.entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().toJSON());
+        }
+
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, AtomicLong> entry: this.counters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+
+        JSONObject groups = new JSONObject();
+        for (Map.Entry<String, Group> entry: this.groups.entrySet()) {
+            groups.put(entry.getKey(), entry.getValue().toJSON());
+        }
+
+        JSONObject gauges = new JSONObject();
+        for (Map.Entry<String, Gauge> entry: this.gauges.entrySet()) {
+            gauges.put(entry.getKey(), entry.getValue().get());
+        }
+
+        JSONObject o = new JSONObject();
+        o.put("histograms", histograms);
+        o.put("counters", counters);
+        o.put("groups", groups);
+        o.put("gauges", gauges);
+        return o;
+    }
+}
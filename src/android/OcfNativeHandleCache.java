@@ -0,0 +1,54 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Iotivity
+import org.iotivity.base.OcResource;
+
+
+// Native resources built with `OcPlatform.constructResourceObject` for
+// resources the frontend updates without the backend having discovered them
+// (e.g. ones from a previous run). Constructing one is a JNI round trip, so
+// repeated updates of the same resource reuse it. Discovered resources don't
+// need this: their native resource is in the registry.
+//
+// Only the `maxSize` most recently used handles are kept; the others are
+// left to the JNI backend to release.
+public class OcfNativeHandleCache {
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private final Map<String, OcResource> handles;
+
+    public OcfNativeHandleCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public OcfNativeHandleCache(final int maxSize) {
+        // Kept in least recently used first order.
+        this.handles = new LinkedHashMap<String, OcResource>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OcResource> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    // Returns null if there is no handle for `key`.
+    public synchronized OcResource get(String key) {
+        return this.handles.get(key);
+    }
+
+    public synchronized void put(String key, OcResource resource) {
+        this.handles.put(key, resource);
+    }
+
+    public synchronized void remove(String key) {
+        this.handles.remove(key);
+    }
+
+    public synchronized int size() {
+        return this.handles.size();
+    }
+}
@@ -0,0 +1,408 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Decides which observe notifications are worth queueing, before they cost
+// any serialization or bridge traffic. A delivery policy, global or per
+// resource, combines:
+//
+//  * `minInterval`: at least this many ms between two deliveries.
+//  * `maxRate`: a token bucket of `burst` tokens (default 1), refilled at
+//    `maxRate` tokens per second; each delivery takes one.
+//  * `deadband`: `{<property>: {absolute: <delta>} | {percent: <delta>}}`,
+//    where "*" stands for any numeric property. A notification is
+//    suppressed when every deadbanded property is within its band of the
+//    last delivered value, and every other property is unchanged.
+//
+// Notifications held back by the rate limits aren't lost: the latest one is
+// delivered as soon as the limits allow (trailing edge). Resources without
+// a policy are passed through as is.
+public class OcfNotificationFilter {
+    // Parsed `configure` options. In `resourcePolicies`, null values stand
+    // for removals.
+    public static class Config {
+        private boolean hasPolicy = false;
+        private Policy policy;
+        private Map<String, Policy> resourcePolicies = new HashMap<String, Policy>();
+
+        public static Config fromJSON(JSONObject options) throws JSONException {
+            Config config = new Config();
+            if (options == null) {
+                return config;
+            }
+
+            if (options.has("delivery")) {
+                config.hasPolicy = true;
+                config.policy = options.isNull("delivery") ?
+                    null : Policy.fromJSON(options.getJSONObject("delivery"));
+            }
+
+            JSONObject policies = options.optJSONObject("resourceDelivery");
+            if (policies != null) {
+                Iterator<String> it = policies.keys();
+                while (it.hasNext()) {
+                    String key = it.next();
+                    config.resourcePolicies.put(key, policies.isNull(key) ?
+                        null : Policy.fromJSON(policies.getJSONObject(key)));
+                }
+            }
+
+            return config;
+        }
+    }
+
+    public interface Sink {
+        public void deliver(OcfResource resource, OcfResourceRepresentation repr);
+    }
+
+    private static class Deadband {
+        private final double delta;
+        private final boolean percent;
+
+        private Deadband(double delta, boolean percent) {
+            this.delta = delta;
+            this.percent = percent;
+        }
+
+        public static Deadband fromJSON(JSONObject obj) throws JSONException {
+            if (obj.has("absolute")) {
+                return new Deadband(obj.getDouble("absolute"), false);
+            } else if (obj.has("percent")) {
+                return new Deadband(obj.getDouble("percent"), true);
+            }
+            throw new JSONException("Deadband needs an absolute or percent value");
+        }
+
+        public boolean contains(double last, double value) {
+            double band = this.percent ? Math.abs(last) * this.delta / 100 : this.delta;
+            return Math.abs(value - last) <= band;
+        }
+
+        public JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put(this.percent ? "percent" : "absolute", this.delta);
+            return o;
+        }
+    }
+
+    public static class Policy {
+        private int minInterval = 0;
+        private double maxRate = 0;
+        private int burst = 1;
+        private Map<String, Deadband> deadbands = new HashMap<String, Deadband>();
+
+        public static Policy fromJSON(JSONObject obj) throws JSONException {
+            Policy policy = new Policy();
+            policy.minInterval = Math.max(0, obj.optInt("minInterval", 0));
+            policy.maxRate = Math.max(0, obj.optDouble("maxRate", 0));
+            policy.burst = Math.max(1, obj.optInt("burst", 1));
+
+            JSONObject deadband = obj.optJSONObject("deadband");
+            if (deadband != null) {
+                Iterator<String> it = deadband.keys();
+                while (it.hasNext()) {
+                    String name = it.next();
+                    policy.deadbands.put(
+                        name, Deadband.fromJSON(deadband.getJSONObject(name)));
+                }
+            }
+
+            return policy;
+        }
+
+        // Returns whether `repr` is no news compared to `last`.
+        private boolean isWithinDeadband(
+            Map<String, Object> last, OcfResourceRepresentation repr)
+        {
+            if (this.deadbands.isEmpty()) {
+                return false;
+            }
+
+            for (Map.Entry<String, Object> entry: repr.getProperties().entrySet()) {
+                Object value = entry.getValue();
+                Object lastValue = last.get(entry.getKey());
+                Deadband deadband = this.deadbands.get(entry.getKey());
+                if (deadband == null) {
+                    deadband = this.deadbands.get("*");
+                }
+
+                if (deadband != null &&
+                    value instanceof Number && lastValue instanceof Number)
+                {
+                    if (!deadband.contains(((Number) lastValue).doubleValue(),
+                                           ((Number) value).doubleValue()))
+                    {
+                        return false;
+                    }
+                } else if (!OcfResourceDeltaTracker.valuesEqual(value, lastValue)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("minInterval", this.minInterval);
+            o.put("maxRate", this.maxRate);
+            o.put("burst", this.burst);
+
+            JSONObject deadband = new JSONObject();
+            for (Map.Entry<String, Deadband> entry: this.deadbands.entrySet()) {
+                deadband.put(entry.getKey(), entry.getValue().toJSON());
+            }
+            o.put("deadband", deadband);
+
+            return o;
+        }
+    }
+
+    // The delivery state of a resource with a policy.
+    private static class State {
+        private long lastDelivery = -1;
+        private double tokens;
+        private long refilledAt;
+        private Map<String, Object> lastValues;
+
+        private OcfResource pendingResource;
+        private OcfResourceRepresentation pending;
+        private boolean scheduled = false;
+
+        // Returns how many ms to wait before the next delivery is allowed.
+        private long getWait(Policy policy, long now) {
+            long wait = 0;
+
+            if (policy.minInterval > 0 && this.lastDelivery >= 0) {
+                wait = this.lastDelivery + policy.minInterval - now;
+            }
+
+            if (policy.maxRate > 0) {
+                this.tokens = Math.min(policy.burst,
+                    this.tokens + (now - this.refilledAt) * policy.maxRate / 1000);
+                this.refilledAt = now;
+                if (this.tokens < 1) {
+                    wait = Math.max(wait,
+                        (long) Math.ceil((1 - this.tokens) * 1000 / policy.maxRate));
+                }
+            }
+
+            return wait;
+        }
+
+        private void delivered(
+            Policy policy, long now, OcfResourceRepresentation repr)
+        {
+            this.lastDelivery = now;
+            if (policy.maxRate > 0) {
+                this.tokens--;
+            }
+            if (!policy.deadbands.isEmpty()) {
+                this.lastValues = new HashMap<String, Object>(repr.getProperties());
+            }
+            this.pendingResource = null;
+            this.pending = null;
+        }
+    }
+
+    private final Sink sink;
+    private final OcfMetrics metrics;
+
+    private Policy policy;
+    private final Map<String, Policy> resourcePolicies = new HashMap<String, Policy>();
+    private final Map<String, State> states = new HashMap<String, State>();
+
+    private long suppressed = 0;
+    private long throttled = 0;
+    private long trailing = 0;
+
+    // Created with the first trailing delivery.
+    private ScheduledExecutorService scheduler;
+    private boolean closed = false;
+
+
+    public OcfNotificationFilter(Sink sink, OcfMetrics metrics) {
+        this.sink = sink;
+        this.metrics = metrics;
+    }
+
+    public void offer(OcfResource resource, OcfResourceRepresentation repr) {
+        String key = resource.getId().getUniqueKey();
+
+        synchronized (this) {
+            Policy policy = this.getPolicy(key);
+            if (policy != null) {
+                long now = now();
+                State state = this.states.get(key);
+                if (state == null) {
+                    state = new State();
+                    state.tokens = policy.burst;
+                    state.refilledAt = now;
+                    this.states.put(key, state);
+                }
+
+                // With a delivery pending, the latest value replaces it even
+                // if within the deadband, so that it's the one delivered.
+                if (state.pending == null && state.lastValues != null &&
+                    policy.isWithinDeadband(state.lastValues, repr))
+                {
+                    this.suppressed++;
+                    this.metrics.counter("delivery.suppressed").incrementAndGet();
+                    return;
+                }
+
+                long wait = state.getWait(policy, now);
+                if (wait > 0) {
+                    state.pendingResource = resource;
+                    state.pending = repr;
+                    this.throttled++;
+                    this.metrics.counter("delivery.throttled").incrementAndGet();
+                    this.scheduleFlush(key, state, wait);
+                    return;
+                }
+
+                state.delivered(policy, now, repr);
+            }
+        }
+
+        this.sink.deliver(resource, repr);
+    }
+
+    // Delivers the pending notification of `key`, if the limits allow.
+    private void flush(String key) {
+        OcfResource resource;
+        OcfResourceRepresentation repr;
+
+        synchronized (this) {
+            State state = this.states.get(key);
+            if (state == null) {
+                return;
+            }
+
+            state.scheduled = false;
+            if (state.pending == null) {
+                return;
+            }
+
+            resource = state.pendingResource;
+            repr = state.pending;
+
+            Policy policy = this.getPolicy(key);
+            if (policy != null) {
+                long now = now();
+                long wait = state.getWait(policy, now);
+                if (wait > 0) {
+                    this.scheduleFlush(key, state, wait);
+                    return;
+                }
+                state.delivered(policy, now, repr);
+            } else {
+                this.states.remove(key);
+            }
+
+            this.trailing++;
+            this.metrics.counter("delivery.trailing").incrementAndGet();
+        }
+
+        this.sink.deliver(resource, repr);
+    }
+
+    private void scheduleFlush(final String key, State state, long wait) {
+        if (state.scheduled || this.closed) {
+            return;
+        }
+
+        if (this.scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OcfNotificationFilter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        final OcfNotificationFilter self = this;
+        try {
+            this.scheduler.schedule(new Runnable() {
+                public void run() {
+                    self.flush(key);
+                }
+            }, wait, TimeUnit.MILLISECONDS);
+            state.scheduled = true;
+        } catch (RejectedExecutionException ex) {
+            // Closed.
+        }
+    }
+
+    // Forgets about `key`, e.g. when it isn't observed anymore.
+    public synchronized void remove(String key) {
+        this.states.remove(key);
+    }
+
+    public synchronized void close() {
+        this.closed = true;
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    private Policy getPolicy(String key) {
+        Policy policy = this.resourcePolicies.get(key);
+        return policy != null ? policy : this.policy;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    // ------------------------------------------------------------------------
+    // Configuration
+    // ------------------------------------------------------------------------
+
+    // Reads the `delivery` (global policy) and `resourceDelivery`
+    // (`{<resource key>: <policy>}` overrides) options, where null removes a
+    // policy. Applies them as a whole: if any of them is invalid, none is.
+    public void configure(JSONObject options) throws JSONException {
+        this.configure(Config.fromJSON(options));
+    }
+
+    // Applies options parsed beforehand, e.g. together with those of other
+    // components, so that none is applied unless all are valid.
+    public synchronized void configure(Config config) {
+        if (config.hasPolicy) {
+            this.policy = config.policy;
+        }
+        for (Map.Entry<String, Policy> entry: config.resourcePolicies.entrySet()) {
+            if (entry.getValue() == null) {
+                this.resourcePolicies.remove(entry.getKey());
+            } else {
+                this.resourcePolicies.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("policy", this.policy != null ? this.policy.toJSON() : JSONObject.NULL);
+        o.put("resourcePolicies", this.resourcePolicies.size());
+        o.put("suppressed", this.suppressed);
+        o.put("throttled", this.throttled);
+        o.put("trailing", this.trailing);
+
+        return o;
+    }
+}
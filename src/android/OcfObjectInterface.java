@@ -7,4 +7,8 @@ import org.json.JSONObject;
 
 public interface OcfObjectInterface {
     public JSONObject toJSON() throws JSONException;
+
+    // Streams the same content as `toJSON` into `writer`, without building
+    // the intermediate tree.
+    public void write(OcfWriter writer) throws JSONException;
 }
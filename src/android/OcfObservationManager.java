@@ -0,0 +1,176 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Android
+import android.util.Log;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Decides which resources are observed. Observable resources are observed
+// as they are found unless `autoObserve` is off, and the app can observe or
+// stop observing any resource by key. At most `maxObservations` resources
+// (0 for no limit) are observed at once. Once the cap is reached, found
+// resources are no longer observed automatically. Only an explicit observe
+// request makes room: it cancels the least recently accessed automatic
+// observation, or, if there is none, the least recently accessed one.
+// Accesses are explicit observe requests, reads and updates by the app.
+// Notifications don't count, so a chatty resource nobody looks at doesn't
+// stay observed on its own.
+//
+// The backend does the actual observing through an `Observer`, which is
+// always called with the manager locked, so that starts and cancellations
+// of the same resource can't overtake each other.
+public class OcfObservationManager {
+    public interface Observer {
+        // Returns whether the observation could be started.
+        public boolean startObserving(String key);
+        public void stopObserving(String key);
+    }
+
+    public static final int DEFAULT_MAX_OBSERVATIONS = 0;
+
+    private final Observer observer;
+
+    private boolean autoObserve = true;
+    private int maxObservations = DEFAULT_MAX_OBSERVATIONS;
+
+    // The observed resource keys, least recently accessed first, and
+    // whether the app asked for them.
+    private final LinkedHashMap<String, Boolean> observed =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+
+    private long evicted = 0;
+    private long skipped = 0;
+
+
+    public OcfObservationManager(Observer observer) {
+        this.observer = observer;
+    }
+
+    // Called for every newly found resource.
+    public synchronized void onResourceFound(String key, boolean observable) {
+        if (!this.autoObserve || !observable || this.observed.containsKey(key)) {
+            return;
+        }
+
+        if (this.maxObservations > 0 &&
+            this.observed.size() >= this.maxObservations)
+        {
+            this.skipped++;
+            return;
+        }
+
+        if (this.observer.startObserving(key)) {
+            this.observed.put(key, Boolean.FALSE);
+        }
+    }
+
+    // Observes `key` for the app. Returns whether `key` is observed.
+    public synchronized boolean observe(String key) {
+        if (this.observed.get(key) != null) {
+            this.observed.put(key, Boolean.TRUE);
+            return true;
+        }
+
+        if (!this.observer.startObserving(key)) {
+            return false;
+        }
+
+        this.observed.put(key, Boolean.TRUE);
+        this.evictOverflow();
+        return true;
+    }
+
+    public synchronized void unobserve(String key) {
+        if (this.observed.remove(key) != null) {
+            this.observer.stopObserving(key);
+        }
+    }
+
+    // Marks `key` as recently accessed.
+    public synchronized void touch(String key) {
+        this.observed.get(key);
+    }
+
+    public synchronized boolean isObserved(String key) {
+        return this.observed.containsKey(key);
+    }
+
+    public synchronized int size() {
+        return this.observed.size();
+    }
+
+    // Cancels all observations, e.g. when the backend goes away.
+    public synchronized void clear() {
+        List<String> keys = new ArrayList<String>(this.observed.keySet());
+        this.observed.clear();
+        for (String key: keys) {
+            this.observer.stopObserving(key);
+        }
+    }
+
+    private void evictOverflow() {
+        if (this.maxObservations <= 0) {
+            return;
+        }
+
+        // Automatic observations go first.
+        this.evict(Boolean.FALSE);
+        this.evict(Boolean.TRUE);
+    }
+
+    private void evict(Boolean explicit) {
+        Iterator<Map.Entry<String, Boolean>> it = this.observed.entrySet().iterator();
+        while (this.observed.size() > this.maxObservations && it.hasNext()) {
+            Map.Entry<String, Boolean> entry = it.next();
+            if (!entry.getValue().equals(explicit)) {
+                continue;
+            }
+
+            it.remove();
+            this.evicted++;
+            Log.d("CordovaPluginOCF", "Evicting observation: " + entry.getKey());
+            this.observer.stopObserving(entry.getKey());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Configuration
+    // ------------------------------------------------------------------------
+
+    public synchronized void configure(JSONObject options) throws JSONException {
+        if (options == null) {
+            return;
+        }
+
+        if (options.has("autoObserve")) {
+            this.autoObserve = options.getBoolean("autoObserve");
+        }
+        if (options.has("maxObservations")) {
+            this.maxObservations = Math.max(0, options.getInt("maxObservations"));
+        }
+
+        this.evictOverflow();
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("autoObserve", this.autoObserve);
+        o.put("maxObservations", this.maxObservations);
+        o.put("observed", new JSONArray(this.observed.keySet()));
+        o.put("evicted", this.evicted);
+        o.put("skipped", this.skipped);
+
+        return o;
+    }
+}
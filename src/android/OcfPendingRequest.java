@@ -0,0 +1,109 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+// The completion handle of a single in-flight native request. Exactly one of
+// `complete`, `fail` or the timeout armed by `OcfRequestCorrelator` wins;
+// the others become no-ops, so late or duplicate native callbacks are
+// harmless.
+public abstract class OcfPendingRequest<T> {
+    enum Outcome { COMPLETED, FAILED, TIMED_OUT }
+
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private int id;
+    private String operation;
+    private long startTime;
+    private OcfRequestCorrelator correlator;
+    private Runnable released;
+    private ScheduledFuture<?> timeoutTask;
+
+    protected abstract void onCompleted(T result);
+    protected abstract void onFailed(String reason);
+
+    public int getId() { return this.id; }
+
+    // What kind of request this is, e.g. "get" or "put".
+    public String getOperation() { return this.operation; }
+
+    // Milliseconds since the request was tracked.
+    public long getElapsed() { return (System.nanoTime() - this.startTime) / 1000000; }
+
+    // `System.nanoTime()` when the request was tracked.
+    public long getStartTime() { return this.startTime; }
+
+    public boolean isDone() { return this.done.get(); }
+
+    public boolean complete(T result) {
+        if (!this.finish(Outcome.COMPLETED)) {
+            return false;
+        }
+
+        this.onCompleted(result);
+        return true;
+    }
+
+    public boolean fail(String reason) {
+        return this.fail(reason, Outcome.FAILED);
+    }
+
+    // ------------------------------------------------------------------------
+    // Used by OcfRequestCorrelator
+    // ------------------------------------------------------------------------
+
+    void attach(
+        OcfRequestCorrelator correlator, int id, String operation,
+        Runnable released)
+    {
+        this.correlator = correlator;
+        this.released = released;
+        this.id = id;
+        this.operation = operation;
+        this.startTime = System.nanoTime();
+    }
+
+    synchronized void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        if (this.isDone()) {
+            timeoutTask.cancel(false);
+        } else {
+            this.timeoutTask = timeoutTask;
+        }
+    }
+
+    boolean expire() {
+        return this.fail("timeout after " + this.getElapsed() + " ms", Outcome.TIMED_OUT);
+    }
+
+    private boolean fail(String reason, Outcome outcome) {
+        if (!this.finish(outcome)) {
+            return false;
+        }
+
+        this.onFailed(reason);
+        return true;
+    }
+
+    private boolean finish(Outcome outcome) {
+        if (!this.done.compareAndSet(false, true)) {
+            return false;
+        }
+
+        synchronized (this) {
+            if (this.timeoutTask != null) {
+                this.timeoutTask.cancel(false);
+                this.timeoutTask = null;
+            }
+        }
+
+        if (this.correlator != null) {
+            this.correlator.release(this, outcome);
+        }
+        if (this.released != null) {
+            this.released.run();
+        }
+
+        return true;
+    }
+}
@@ -1,5 +1,9 @@
 package com.intel.cordova.plugin.ocf;
 
+// Java
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
 // Cordova
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
@@ -18,22 +22,97 @@ public class OcfPlugin extends CordovaPlugin {
     static final String TAG = "OcfPlugin";
     private OcfBackendInterface backend;
 
+    // Backend operations run on our own pool rather than on the Cordova one,
+    // which is shared with other plugins. Its size, queue bound and number
+    // of outstanding native requests can be set with the
+    // `OcfExecutorThreads`, `OcfExecutorMaxQueued` and
+    // `OcfExecutorMaxInFlight` preferences in config.xml.
+    private OcfExecutor executor;
+
+    // Shared by all backends, so that counters survive backend switches.
+    private final OcfMetrics metrics = new OcfMetrics();
+
+    @Override
+    protected void pluginInitialize() {
+        this.executor = new OcfExecutor(
+            preferences.getInteger("OcfExecutorThreads", OcfExecutor.DEFAULT_THREADS),
+            preferences.getInteger("OcfExecutorMaxQueued", OcfExecutor.DEFAULT_MAX_QUEUED),
+            preferences.getInteger("OcfExecutorMaxInFlight", OcfExecutor.DEFAULT_MAX_IN_FLIGHT));
+    }
+
+    @Override
+    public void onDestroy() {
+        if (this.backend != null) {
+            this.backend.close();
+        }
+        this.executor.shutdown();
+    }
+
+    public OcfExecutor getExecutor() { return this.executor; }
+
+    public OcfMetrics getMetrics() { return this.metrics; }
+
+    private void execute(
+        OcfExecutor.Priority priority, CallbackContext cc, Runnable runnable)
+    {
+        try {
+            this.executor.execute(priority, runnable);
+        } catch (RejectedExecutionException e) {
+            cc.error(e.getMessage());
+        }
+    }
+
     private void setBackend(JSONArray args)
         throws JSONException, OcfInvalidBackendException
     {
         String type = args.getString(0);
+
+        // The new backend is built first: if its type or options are
+        // invalid, the old one stays, gauges included.
+        Map<String, OcfMetrics.Gauge> gauges = this.metrics.clearGauges();
+        OcfBackendInterface backend = null;
+        try {
+            backend = this.createBackend(type, args.optJSONObject(1));
+        } finally {
+            if (backend == null) {
+                this.metrics.restoreGauges(gauges);
+            }
+        }
+
+        // The old backend won't be used anymore, so let go of its stream
+        // and threads.
+        if (this.backend != null) {
+            this.backend.close();
+        }
+        this.backend = backend;
+    }
+
+    private OcfBackendInterface createBackend(String type, JSONObject options)
+        throws JSONException, OcfInvalidBackendException
+    {
         if (type.equals("mock")) {
-            this.backend = new OcfBackendMock(null);
+            return new OcfBackendMock(this, options);
         } else if (type.equals("iotivity")) {
-            this.backend = new OcfBackendIotivity(this);
-        } else {
-            throw new OcfInvalidBackendException(type);
+            return new OcfBackendIotivity(this, options);
+        } else if (type.startsWith(OcfBackendFaulty.PREFIX)) {
+            String wrapped = type.substring(OcfBackendFaulty.PREFIX.length());
+            OcfBackendInterface backend = this.createBackend(wrapped, options);
+            OcfBackendInterface faulty = null;
+            try {
+                faulty = new OcfBackendFaulty(this, backend, options);
+            } finally {
+                if (faulty == null) {
+                    backend.close();
+                }
+            }
+            return faulty;
         }
+        throw new OcfInvalidBackendException(type);
     }
 
     private void findResources(final JSONArray args, final CallbackContext cc) {
         final OcfPlugin self = this;
-        cordova.getThreadPool().execute(new Runnable() {
+        this.execute(OcfExecutor.Priority.DISCOVERY, cc, new Runnable() {
             public void run() {
                 try {
                     self.backend.findResources(args, cc);
@@ -44,9 +123,30 @@ public class OcfPlugin extends CordovaPlugin {
         });
     }
 
+    // Queued behind the discoveries, so that it finds the session of a
+    // `findResources` call made just before.
+    private void cancelDiscovery(final JSONArray args, final CallbackContext cc)
+        throws JSONException
+    {
+        final OcfPlugin self = this;
+        final String requestId = args.getString(0);
+        this.execute(OcfExecutor.Priority.DISCOVERY, cc, new Runnable() {
+            public void run() {
+                try {
+                    JSONObject o = new JSONObject();
+                    o.put("requestId", requestId);
+                    o.put("cancelled", self.backend.cancelDiscovery(requestId));
+                    cc.success(o);
+                } catch (JSONException e) {
+                    cc.error(e.getMessage());
+                }
+            }
+        });
+    }
+
     private void findDevices(final CallbackContext cc) {
         final OcfPlugin self = this;
-        cordova.getThreadPool().execute(new Runnable() {
+        this.execute(OcfExecutor.Priority.DISCOVERY, cc, new Runnable() {
             public void run() {
                 self.backend.findDevices(cc);
             }
@@ -55,7 +155,7 @@ public class OcfPlugin extends CordovaPlugin {
 
     private void updateResource(final JSONArray args, final CallbackContext cc) {
         final OcfPlugin self = this;
-        cordova.getThreadPool().execute(new Runnable() {
+        this.execute(OcfExecutor.Priority.USER, cc, new Runnable() {
             public void run() {
                 try {
                     self.backend.updateResource(args, cc);
@@ -66,15 +166,95 @@ public class OcfPlugin extends CordovaPlugin {
         });
     }
 
-    private JSONArray getResourceUpdates() throws JSONException {
-        return this.backend.getResourceUpdates();
+    private void updateResources(final JSONArray args, final CallbackContext cc) {
+        final OcfPlugin self = this;
+        this.execute(OcfExecutor.Priority.USER, cc, new Runnable() {
+            public void run() {
+                try {
+                    self.backend.updateResources(args, cc);
+                } catch (JSONException e) {
+                    cc.error("Error parsing arguments: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private PluginResult getResourceUpdates(final JSONArray args) throws JSONException {
+        OcfWriter writer = OcfWriter.obtain(OcfWriter.getFormat(args.optJSONObject(0)));
+        this.backend.getResourceUpdates(writer);
+        return OcfPluginResults.fromWriter(writer, this.metrics, "getResourceUpdates");
+    }
+
+    private JSONObject configureResourceUpdates(final JSONArray args)
+        throws JSONException
+    {
+        JSONObject options = args.optJSONObject(0);
+
+        // `format` is for the frontend's update stream, but an invalid one
+        // is rejected here, before anything is applied.
+        OcfWriter.getFormat(options);
+
+        return this.backend.configureResourceUpdates(options);
+    }
+
+    private void subscribeResourceUpdates(final JSONArray args, final CallbackContext cc)
+        throws JSONException
+    {
+        this.backend.subscribeResourceUpdates(args, cc);
+    }
+
+    private void unsubscribeResourceUpdates() {
+        this.backend.unsubscribeResourceUpdates();
+    }
+
+    // Resources are named by key (`deviceId + resourcePath`) or by handle.
+    private static String getResourceKey(JSONArray args, int index)
+        throws JSONException
+    {
+        Object arg = args.get(index);
+        if (arg instanceof Number) {
+            OcfResourceKey key = OcfResourceKey.fromHandle(((Number) arg).intValue());
+            return key != null ? key.toString() : "";
+        }
+        return args.getString(index);
+    }
+
+    private JSONObject observeResource(final JSONArray args) throws JSONException {
+        String key = getResourceKey(args, 0);
+        JSONObject o = new JSONObject();
+        o.put("key", key);
+        o.put("observed", this.backend.observeResource(key));
+        return o;
+    }
+
+    private void unobserveResource(final JSONArray args) throws JSONException {
+        this.backend.unobserveResource(getResourceKey(args, 0));
+    }
+
+    private JSONObject configureObservations(final JSONArray args)
+        throws JSONException
+    {
+        return this.backend.configureObservations(args.optJSONObject(0));
     }
 
     private JSONObject getResourceProperties(final JSONArray args) throws JSONException {
-        String key = args.getString(0);
+        String key = getResourceKey(args, 0);
         return this.backend.getResourceProperties(key);
     }
 
+    private PluginResult getResourcesProperties(final JSONArray args) throws JSONException {
+        JSONObject options = args.optJSONObject(0);
+        OcfWriter writer = OcfWriter.obtain(OcfWriter.getFormat(options));
+        this.backend.getResourcesProperties(options, writer);
+        return OcfPluginResults.fromWriter(writer, this.metrics, "getResourcesProperties");
+    }
+
+    private JSONObject getMetricsJSON() throws JSONException {
+        JSONObject o = this.metrics.toJSON();
+        o.put("executor", this.executor.getStats());
+        return o;
+    }
+
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext cc) {
         Log.d(TAG, "Executing Cordova action: " + action);
@@ -92,6 +272,8 @@ public class OcfPlugin extends CordovaPlugin {
                 PluginResult result = new PluginResult(PluginResult.Status.OK);
                 result.setKeepCallback(true);
                 cc.sendPluginResult(result);
+            } else if ("cancelDiscovery".equals(action)) {
+                this.cancelDiscovery(args, cc);
             } else if ("findDevices".equals(action)) {
                 this.findDevices(cc);
                 PluginResult result = new PluginResult(PluginResult.Status.OK);
@@ -102,12 +284,40 @@ public class OcfPlugin extends CordovaPlugin {
                 PluginResult result = new PluginResult(PluginResult.Status.OK);
                 result.setKeepCallback(true);
                 cc.sendPluginResult(result);
+            } else if ("updateResources".equals(action)) {
+                this.updateResources(args, cc);
+                PluginResult result = new PluginResult(PluginResult.Status.OK);
+                result.setKeepCallback(true);
+                cc.sendPluginResult(result);
             } else if ("getResourceUpdates".equals(action)) {
-                JSONArray updates = this.getResourceUpdates();
-                cc.success(updates);
+                cc.sendPluginResult(this.getResourceUpdates(args));
+            } else if ("configureResourceUpdates".equals(action)) {
+                JSONObject status = this.configureResourceUpdates(args);
+                cc.success(status);
+            } else if ("subscribeResourceUpdates".equals(action)) {
+                PluginResult result = new PluginResult(PluginResult.Status.OK);
+                result.setKeepCallback(true);
+                cc.sendPluginResult(result);
+                this.subscribeResourceUpdates(args, cc);
+            } else if ("unsubscribeResourceUpdates".equals(action)) {
+                this.unsubscribeResourceUpdates();
+                cc.success();
+            } else if ("observeResource".equals(action)) {
+                cc.success(this.observeResource(args));
+            } else if ("unobserveResource".equals(action)) {
+                this.unobserveResource(args);
+                cc.success();
+            } else if ("configureObservations".equals(action)) {
+                cc.success(this.configureObservations(args));
             } else if ("getResourceProperties".equals(action)) {
                 JSONObject properties = this.getResourceProperties(args);
                 cc.success(properties);
+            } else if ("getResourcesProperties".equals(action)) {
+                cc.sendPluginResult(this.getResourcesProperties(args));
+            } else if ("getExecutorStats".equals(action)) {
+                cc.success(this.executor.getStats());
+            } else if ("getMetrics".equals(action)) {
+                cc.success(this.getMetricsJSON());
             } else {
                 Log.e(TAG, "Unknown action: " + action);
                 cc.error("Unknown action: " + action);
@@ -0,0 +1,45 @@
+package com.intel.cordova.plugin.ocf;
+
+// Cordova
+import org.apache.cordova.PluginResult;
+
+// Third party
+import org.json.JSONException;
+
+
+// Builds plugin results out of writers: JSON is handed over pre-encoded,
+// CBOR as a byte array, which the frontend gets as an `ArrayBuffer`.
+public class OcfPluginResults {
+    private OcfPluginResults() {}
+
+    public static PluginResult fromWriter(OcfWriter writer) {
+        if (writer instanceof OcfCborWriter) {
+            return new PluginResult(
+                PluginResult.Status.OK, ((OcfCborWriter) writer).toByteArray());
+        }
+
+        // Cordova only looks at the message's toString(), so this carries
+        // arrays just as well.
+        return new PluginResult(
+            PluginResult.Status.OK, ((OcfJsonWriter) writer).toJSONObject());
+    }
+
+    // Same as `fromWriter(writer)`, also accounting the message and its size
+    // to `action` in `metrics`.
+    public static PluginResult fromWriter(
+        OcfWriter writer, OcfMetrics metrics, String action)
+    {
+        metrics.group("messages").increment(action);
+        metrics.group("bytes").add(action, writer.size());
+        return fromWriter(writer);
+    }
+
+    public static PluginResult encode(
+        OcfObjectInterface value, String format, OcfMetrics metrics, String action)
+        throws JSONException
+    {
+        OcfWriter writer = OcfWriter.obtain(format);
+        value.write(writer);
+        return fromWriter(writer, metrics, action);
+    }
+}
@@ -0,0 +1,111 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// Keeps track of in-flight native requests. Each request gets an ID and its
+// own completion handle, so native callbacks never need to look anything up
+// by resource key, and the timeout is a scheduled task instead of a thread
+// sleeping in a loop.
+//
+// Round-trip latencies of completed requests are recorded in the `<operation>`
+// histogram of `metrics`, and failures and timeouts in the
+// `<operation>.errors` and `<operation>.timeouts` counters.
+//
+// Once closed, pending and new requests fail right away.
+public class OcfRequestCorrelator {
+    private static final String CLOSED = "backend closed";
+
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    private final Map<Integer, OcfPendingRequest<?> > inFlight =
+        new ConcurrentHashMap<Integer, OcfPendingRequest<?> >();
+    private final ScheduledExecutorService timer =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OcfRequestCorrelator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    private final OcfMetrics metrics;
+    private volatile boolean closed = false;
+
+    public OcfRequestCorrelator(OcfMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public <T> OcfPendingRequest<T> track(
+        final OcfPendingRequest<T> request, String operation, int timeout)
+    {
+        return this.track(request, operation, timeout, null);
+    }
+
+    // Like `track`, and runs `released`, if not null, once the request is
+    // done, however it ends.
+    public <T> OcfPendingRequest<T> track(
+        final OcfPendingRequest<T> request, String operation, int timeout,
+        Runnable released)
+    {
+        int id = this.nextId.incrementAndGet();
+        request.attach(this, id, operation, released);
+        this.inFlight.put(id, request);
+
+        try {
+            request.setTimeoutTask(this.timer.schedule(new Runnable() {
+                public void run() {
+                    request.expire();
+                }
+            }, timeout, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException ex) {
+            request.fail(CLOSED);
+        }
+
+        // Either `close` sees the request, or we see `closed`.
+        if (this.closed) {
+            request.fail(CLOSED);
+        }
+
+        return request;
+    }
+
+    // Stops the timer and fails the requests still in flight.
+    public void close() {
+        this.closed = true;
+        this.timer.shutdownNow();
+        for (OcfPendingRequest<?> request:
+             new ArrayList<OcfPendingRequest<?> >(this.inFlight.values()))
+        {
+            request.fail(CLOSED);
+        }
+    }
+
+    public OcfPendingRequest<?> get(int id) {
+        return this.inFlight.get(id);
+    }
+
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    void release(OcfPendingRequest<?> request, OcfPendingRequest.Outcome outcome) {
+        this.inFlight.remove(request.getId());
+
+        String operation = request.getOperation();
+        if (outcome == OcfPendingRequest.Outcome.COMPLETED) {
+            this.metrics.histogram(operation).recordSince(request.getStartTime());
+        } else if (outcome == OcfPendingRequest.Outcome.TIMED_OUT) {
+            this.metrics.counter(operation + ".timeouts").incrementAndGet();
+        } else {
+            this.metrics.counter(operation + ".errors").incrementAndGet();
+        }
+    }
+}
@@ -47,6 +47,18 @@ public class OcfResource implements OcfObjectInterface
 
     public OcfResourceId getId() { return this.id; }
 
+    // Resources are equal when they have the same id, whatever their state.
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof OcfResource &&
+            ((OcfResource) other).id.equals(this.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.id.hashCode();
+    }
+
     public ArrayList<String> getResourceTypes() { return this.resourceTypes; }
 
     public ArrayList<String> getInterfaces() { return this.interfaces; }
@@ -61,8 +73,14 @@ public class OcfResource implements OcfObjectInterface
     // Setters
     // ------------------------------------------------------------------------
 
+    // The properties move to the schema shared by the resources of the
+    // first type.
     public void setResourceTypes(ArrayList<String> resourceTypes) {
         this.resourceTypes = new ArrayList<String>(resourceTypes);
+        if (!resourceTypes.isEmpty()) {
+            this.properties.setSchema(
+                OcfResourceSchema.forResourceType(resourceTypes.get(0)));
+        }
     }
 
     public void setInterfaces(ArrayList<String> interfaces) {
@@ -93,6 +111,17 @@ public class OcfResource implements OcfObjectInterface
         return o;
     }
 
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("id", this.id);
+        writer.name("resourceTypes").stringArray(this.resourceTypes);
+        writer.name("interfaces").stringArray(this.interfaces);
+        writer.name("mediaTypes").stringArray(this.mediaTypes);
+        writer.property("properties", this.properties);
+        writer.property("observable", this.observable);
+        writer.endObject();
+    }
+
     public static OcfResource fromJSON(JSONObject obj) throws JSONException {
         Log.d("OCF", obj.toString());
         OcfResource resource = new OcfResource();
@@ -126,7 +155,9 @@ public class OcfResource implements OcfObjectInterface
         JSONObject propertiesJson = obj.optJSONObject("properties");
         if (propertiesJson != null) {
             resource.properties = OcfResourceRepresentation.fromJSON(
-                propertiesJson);
+                propertiesJson, resource.resourceTypes.isEmpty() ?
+                    OcfResourceSchema.createPrivate() :
+                    OcfResourceSchema.forResourceType(resource.resourceTypes.get(0)));
         }
 
         resource.observable = obj.optBoolean("observable");
@@ -0,0 +1,151 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Turns full resource representations into property-level deltas, computed
+// against the last representation delivered to the frontend for the same
+// resource. Diffing against what was delivered (rather than against the
+// previous notification) keeps the frontend consistent even when the update
+// queue coalesces or drops notifications.
+//
+// A delta looks like:
+//
+//   {"delta": true, "key": <resource key>, "seq": <n>, "full": <bool>,
+//    "changed": {<changed or added properties>}, "removed": [<keys>]}
+//
+// The first delta of a resource is `full`, i.e. `changed` holds all of its
+// properties and replaces whatever the frontend had. `seq` counts the deltas
+// of a resource from the full one, so that the frontend can tell when one
+// was lost, and fetch the properties again.
+public class OcfResourceDeltaTracker {
+    private static class State {
+        Map<String, Object> properties;
+        int seq = 0;
+    }
+
+    public static class Delta implements OcfObjectInterface {
+        public final String key;
+        public final int seq;
+        public final boolean full;
+        public final OcfResourceRepresentation changed;
+        public final List<String> removed;
+
+        Delta(String key, int seq, boolean full,
+              OcfResourceRepresentation changed, List<String> removed)
+        {
+            this.key = key;
+            this.seq = seq;
+            this.full = full;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        public JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("delta", true);
+            o.put("key", this.key);
+            o.put("seq", this.seq);
+            o.put("full", this.full);
+            o.put("changed", this.changed.toJSON());
+            o.put("removed", new JSONArray(this.removed));
+
+            return o;
+        }
+
+        public void write(OcfWriter writer) throws JSONException {
+            writer.beginObject();
+            writer.property("delta", true);
+            writer.property("key", this.key);
+            writer.property("seq", this.seq);
+            writer.property("full", this.full);
+            writer.property("changed", this.changed);
+            writer.name("removed").stringArray(this.removed);
+            writer.endObject();
+        }
+    }
+
+    private Map<String, State> states = new HashMap<String, State>();
+
+    // Returns null if nothing changed since the last delivered delta.
+    public synchronized Delta toDelta(String key, OcfResourceRepresentation repr) {
+        Map<String, Object> current = repr.getProperties();
+        OcfResourceRepresentation changed = new OcfResourceRepresentation(repr.getSchema());
+        List<String> removed = new ArrayList<String>();
+
+        State state = this.states.get(key);
+        boolean full = state == null;
+
+        if (full) {
+            state = new State();
+            this.states.put(key, state);
+            for (Map.Entry<String, Object> entry: current.entrySet()) {
+                changed.setValue(entry.getKey(), entry.getValue());
+            }
+        } else {
+            for (Map.Entry<String, Object> entry: current.entrySet()) {
+                String name = entry.getKey();
+                if (!state.properties.containsKey(name) ||
+                    !valuesEqual(state.properties.get(name), entry.getValue()))
+                {
+                    changed.setValue(name, entry.getValue());
+                }
+            }
+
+            for (String name: state.properties.keySet()) {
+                if (!current.containsKey(name)) {
+                    removed.add(name);
+                }
+            }
+
+            if (changed.isEmpty() && removed.isEmpty()) {
+                return null;
+            }
+        }
+
+        // Only what changed is updated, rather than copying all of `current`.
+        if (full) {
+            state.properties = new HashMap<String, Object>(current);
+        } else {
+            for (Map.Entry<String, Object> entry: changed.getProperties().entrySet()) {
+                state.properties.put(entry.getKey(), entry.getValue());
+            }
+            for (String name: removed) {
+                state.properties.remove(name);
+            }
+        }
+        state.seq++;
+
+        return new Delta(key, state.seq, full, changed, removed);
+    }
+
+    // Next delta for `key` will be a full one.
+    public synchronized void forget(String key) {
+        this.states.remove(key);
+    }
+
+    public synchronized void clear() {
+        this.states.clear();
+    }
+
+    static boolean valuesEqual(Object a, Object b) {
+        if ((a instanceof JSONObject && b instanceof JSONObject) ||
+            (a instanceof JSONArray && b instanceof JSONArray))
+        {
+            return a.toString().equals(b.toString());
+        }
+
+        // Handles primitive arrays coming from the native side, too.
+        return Arrays.deepEquals(new Object[] {a}, new Object[] {b});
+    }
+}
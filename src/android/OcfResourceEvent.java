@@ -8,14 +8,35 @@ import org.json.JSONObject;
 public class OcfResourceEvent implements OcfObjectInterface {
     public OcfResource resource;
 
+    // Whether this event comes from the discovery cache rather than from
+    // live discovery.
+    public boolean stale = false;
+
     public OcfResourceEvent(OcfResource resource) {
         this.resource = resource;
     }
 
+    public OcfResourceEvent(OcfResource resource, boolean stale) {
+        this.resource = resource;
+        this.stale = stale;
+    }
+
     public JSONObject toJSON() throws JSONException {
         JSONObject o = new JSONObject();
         o.put("resource", this.resource.toJSON());
+        if (this.stale) {
+            o.put("stale", true);
+        }
 
         return o;
     }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("resource", this.resource);
+        if (this.stale) {
+            writer.property("stale", true);
+        }
+        writer.endObject();
+    }
 }
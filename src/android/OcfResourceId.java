@@ -5,10 +5,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 
+// Ids are equal when they name the same resource.
 public class OcfResourceId implements OcfObjectInterface {
     private String deviceId;
     private String resourcePath;
 
+    // Looked up on first use, and again after a change or a release.
+    private OcfResourceKey key;
+
     public OcfResourceId() {}
 
     public OcfResourceId(String deviceId, String resourcePath) {
@@ -24,16 +28,63 @@ public class OcfResourceId implements OcfObjectInterface {
 
     public String getResourcePath() { return this.resourcePath; }
 
-    public String getUniqueKey() { return this.deviceId + this.resourcePath; }
+    // The canonical key, or null if the resource isn't registered.
+    public OcfResourceKey getKey() {
+        OcfResourceKey key = this.key;
+        if (key == null || key.isReleased()) {
+            key = OcfResourceKey.find(this.deviceId, this.resourcePath);
+            this.key = key;
+        }
+        return key;
+    }
+
+    // Creates the canonical key if needed: only backends registering the
+    // resource do.
+    public OcfResourceKey register() {
+        OcfResourceKey key = OcfResourceKey.of(this.deviceId, this.resourcePath);
+        this.key = key;
+        return key;
+    }
+
+    // The string form of the key, without creating one.
+    public String getUniqueKey() {
+        OcfResourceKey key = this.getKey();
+        if (key == null) {
+            return (this.deviceId != null ? this.deviceId : "") +
+                (this.resourcePath != null ? this.resourcePath : "");
+        }
+        return key.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof OcfResourceId)) {
+            return false;
+        }
+
+        // Keys are canonical, but one of the ids may predate a release.
+        OcfResourceId id = (OcfResourceId) other;
+        return (id.key != null && id.key == this.key) ||
+            id.getUniqueKey().equals(this.getUniqueKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getUniqueKey().hashCode();
+    }
 
     // ------------------------------------------------------------------------
     // Setters
     // ------------------------------------------------------------------------
 
-    public void setDeviceId(String deviceId) { this.deviceId = deviceId; }
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+        this.key = null;
+    }
 
     public void setResourcePath(String resourcePath) {
         this.resourcePath = resourcePath;
+        this.key = null;
     }
 
     public JSONObject toJSON() throws JSONException {
@@ -41,9 +92,26 @@ public class OcfResourceId implements OcfObjectInterface {
         o.put("deviceId", this.deviceId);
         o.put("resourcePath", this.resourcePath);
 
+        // Only registered resources have a handle.
+        OcfResourceKey key = this.getKey();
+        if (key != null) {
+            o.put("handle", key.getHandle());
+        }
+
         return o;
     }
 
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("deviceId", this.deviceId);
+        writer.property("resourcePath", this.resourcePath);
+        OcfResourceKey key = this.getKey();
+        if (key != null) {
+            writer.property("handle", key.getHandle());
+        }
+        writer.endObject();
+    }
+
     public static OcfResourceId fromJSON(JSONObject obj) throws JSONException {
         OcfResourceId id = new OcfResourceId();
 
@@ -0,0 +1,138 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+// The canonical key of a resource: its device ID (host) and resource path.
+// There is a single instance per resource, so keys compare by identity, and
+// looking one up doesn't build any string. Device IDs are shared by all the
+// keys of a device. Each key also has a small integer handle, which the
+// frontend can use instead of the string form, `deviceId + resourcePath`.
+//
+// Backends create the key of a resource when they register it, and `release`
+// it when they forget about it, e.g. when it leaves the network; if it comes
+// back, it gets a new key and handle. Anything else only looks keys up with
+// `find` (see `OcfResourceId`), so resources that are never registered, e.g.
+// filtered out of a discovery or coming from the frontend, don't add to the
+// pool.
+public final class OcfResourceKey {
+    private static class Device {
+        private final String deviceId;
+        private final ConcurrentMap<String, OcfResourceKey> paths =
+            new ConcurrentHashMap<String, OcfResourceKey>();
+
+        private Device(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+    private static final ConcurrentMap<String, Device> devices =
+        new ConcurrentHashMap<String, Device>();
+    private static final ConcurrentMap<String, OcfResourceKey> byString =
+        new ConcurrentHashMap<String, OcfResourceKey>();
+    private static final ConcurrentMap<Integer, OcfResourceKey> byHandle =
+        new ConcurrentHashMap<Integer, OcfResourceKey>();
+    private static final AtomicInteger nextHandle = new AtomicInteger(1);
+
+    private final String deviceId;
+    private final String resourcePath;
+    private final String key;
+    private final int handle;
+    private volatile boolean released = false;
+
+    private OcfResourceKey(String deviceId, String resourcePath, int handle) {
+        this.deviceId = deviceId;
+        this.resourcePath = resourcePath;
+        this.key = deviceId + resourcePath;
+        this.handle = handle;
+    }
+
+    public static OcfResourceKey of(String deviceId, String resourcePath) {
+        OcfResourceKey key = find(deviceId, resourcePath);
+        return key != null ? key : intern(deviceId, resourcePath);
+    }
+
+    // Like `of`, but returns null instead of creating a key.
+    public static OcfResourceKey find(String deviceId, String resourcePath) {
+        Device device = devices.get(deviceId != null ? deviceId : "");
+        return device != null ?
+            device.paths.get(resourcePath != null ? resourcePath : "") : null;
+    }
+
+    // Creating and releasing keys is rare, so they take a lock, which keeps
+    // a device from being dropped while one of its keys is created.
+    private static synchronized OcfResourceKey intern(
+        String deviceId, String resourcePath)
+    {
+        if (deviceId == null) {
+            deviceId = "";
+        }
+        if (resourcePath == null) {
+            resourcePath = "";
+        }
+
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            device = new Device(deviceId);
+            devices.put(deviceId, device);
+        }
+
+        OcfResourceKey key = device.paths.get(resourcePath);
+        if (key == null) {
+            key = new OcfResourceKey(
+                device.deviceId, resourcePath, nextHandle.getAndIncrement());
+            device.paths.put(resourcePath, key);
+            byString.put(key.key, key);
+            byHandle.put(key.handle, key);
+        }
+
+        return key;
+    }
+
+    // Forgets `key`: its handle stops resolving, and the next `of` for its
+    // resource creates a new key.
+    public static synchronized void release(OcfResourceKey key) {
+        Device device = devices.get(key.deviceId);
+        if (device == null || !device.paths.remove(key.resourcePath, key)) {
+            return;
+        }
+
+        key.released = true;
+        byString.remove(key.key, key);
+        byHandle.remove(key.handle, key);
+        if (device.paths.isEmpty()) {
+            devices.remove(key.deviceId, device);
+        }
+    }
+
+    public static int size() {
+        return byHandle.size();
+    }
+
+    // Returns null for keys never seen.
+    public static OcfResourceKey fromString(String key) {
+        return byString.get(key);
+    }
+
+    // Returns null for handles never given out.
+    public static OcfResourceKey fromHandle(int handle) {
+        return byHandle.get(handle);
+    }
+
+    public String getDeviceId() { return this.deviceId; }
+
+    public String getResourcePath() { return this.resourcePath; }
+
+    public int getHandle() { return this.handle; }
+
+    // Whether the key was released, and its handle doesn't resolve anymore.
+    public boolean isReleased() { return this.released; }
+
+    // The string form, as used in maps on both sides of the bridge. It is
+    // the same instance on every call, so that comparisons are quick.
+    @Override
+    public String toString() { return this.key; }
+}
@@ -0,0 +1,29 @@
+package com.intel.cordova.plugin.ocf;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// Sent on the discovery channel when a resource has left the network (see
+// `OcfLivenessTracker`), so that the frontend can let go of it.
+public class OcfResourceLostEvent implements OcfObjectInterface {
+    public OcfResourceId id;
+
+    public OcfResourceLostEvent(OcfResourceId id) {
+        this.id = id;
+    }
+
+    public JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("lost", this.id.toJSON());
+
+        return o;
+    }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("lost", this.id);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,73 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A log of the keys of resources whose properties became available (i.e.
+// whose initial GET completed). The frontend keeps a cursor into it, so it
+// can ask for "everything that became ready since last time" instead of
+// polling every resource that still has no properties.
+//
+// Each key is in the log at most once, at the position of its latest
+// `add`, and is taken out when its resource is forgotten, so the log is
+// bounded by the resources the backend knows. Positions only grow, so
+// cursors stay valid.
+public class OcfResourceReadyLog {
+    private final TreeMap<Integer, String> keys = new TreeMap<Integer, String>();
+    private final Map<String, Integer> positions = new HashMap<String, Integer>();
+    private int next = 0;
+
+    public synchronized void add(String key) {
+        this.remove(key);
+        this.keys.put(this.next, key);
+        this.positions.put(key, this.next);
+        this.next++;
+    }
+
+    public synchronized void remove(String key) {
+        Integer position = this.positions.remove(key);
+        if (position != null) {
+            this.keys.remove(position);
+        }
+    }
+
+    public synchronized int getCursor() {
+        return this.next;
+    }
+
+    public synchronized List<String> since(int cursor) {
+        return new ArrayList<String>(this.keys.tailMap(Math.max(0, cursor)).values());
+    }
+
+    public synchronized int size() {
+        return this.keys.size();
+    }
+
+    // The keys a bulk properties request is about: either its explicit
+    // `keys`, or all the resources that became ready since its `since`
+    // cursor.
+    public List<String> getRequestedKeys(JSONObject options)
+        throws JSONException
+    {
+        JSONArray keysJson = options != null ? options.optJSONArray("keys") : null;
+        if (keysJson == null) {
+            return this.since(options != null ? options.optInt("since", 0) : 0);
+        }
+
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < keysJson.length(); i++) {
+            keys.add(keysJson.getString(i));
+        }
+        return keys;
+    }
+}
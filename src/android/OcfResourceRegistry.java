@@ -0,0 +1,74 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Iotivity
+import org.iotivity.base.OcResource;
+
+
+// All the resources known to the Iotivity backend, indexed by resource key
+// (host + URI). Each entry keeps the native resource, so it stays reference
+// counted by the Iotivity JNI backend, together with its OCF counterpart and
+// its observation state.
+public class OcfResourceRegistry {
+    public static class Entry {
+        private final String key;
+        private final OcResource nativeResource;
+        private final OcfResource ocfResource;
+        private volatile boolean observed = false;
+
+        public Entry(String key, OcResource nativeResource, OcfResource ocfResource) {
+            this.key = key;
+            this.nativeResource = nativeResource;
+            this.ocfResource = ocfResource;
+        }
+
+        public String getKey() { return this.key; }
+
+        public OcResource getNativeResource() { return this.nativeResource; }
+
+        public OcfResource getOcfResource() { return this.ocfResource; }
+
+        public boolean isObserved() { return this.observed; }
+
+        public void setObserved(boolean observed) { this.observed = observed; }
+    }
+
+    private final ConcurrentMap<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+
+    // Doesn't create a key: see `OcfResourceKey`.
+    public static String getKey(String host, String uri) {
+        OcfResourceKey key = OcfResourceKey.find(host, uri);
+        if (key == null) {
+            return (host != null ? host : "") + (uri != null ? uri : "");
+        }
+        return key.toString();
+    }
+
+    public Entry get(String key) {
+        return this.entries.get(key);
+    }
+
+    // Adds `entry` unless its key is already registered, in which case the
+    // existing entry is returned.
+    public Entry putIfAbsent(Entry entry) {
+        Entry existing = this.entries.putIfAbsent(entry.getKey(), entry);
+        return existing != null ? existing : entry;
+    }
+
+    public Entry remove(String key) {
+        return this.entries.remove(key);
+    }
+
+    public Collection<Entry> entries() {
+        return this.entries.values();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -2,12 +2,13 @@ package com.intel.cordova.plugin.ocf;
 
 // Java
 import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.HashMap;
 import java.util.Map;
-
-// Android
-import android.util.Log;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 // Third party
 import org.json.JSONArray;
@@ -15,59 +16,345 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 
+// The properties of a resource. Each property has a slot, given by the
+// representation's schema, which is shared by all the resources of a type
+// (see `OcfResourceSchema`). Numbers and booleans are kept unboxed in `bits`,
+// as longs, raw double bits or 0/1, with their kind in `kinds`; any other
+// value, including null, is kept in `refs`.
+//
+// Representations are thread safe, as a resource's may be written out, e.g.
+// to the frontend or the discovery cache, while notifications update it:
+// each method holds the representation's lock, so that readers never see
+// the slot arrays half grown. Iterating the map view isn't atomic, though.
 public class OcfResourceRepresentation implements OcfObjectInterface {
+    private static final byte ABSENT = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte OBJECT = 5;
+
+    private static final byte[] NO_KINDS = new byte[0];
+    private static final long[] NO_BITS = new long[0];
+
+    private OcfResourceSchema schema;
+    private byte[] kinds = NO_KINDS;
+    private long[] bits = NO_BITS;
+    private Object[] refs;
+    private int size = 0;
+
     private Map<String, Object> properties;
 
     public OcfResourceRepresentation() {
-        this.properties = new HashMap<String, Object>();
+        this(OcfResourceSchema.createPrivate());
+    }
+
+    public OcfResourceRepresentation(OcfResourceSchema schema) {
+        this.schema = schema;
     }
 
     // ------------------------------------------------------------------------
     // Getters
     // ------------------------------------------------------------------------
 
-    public Map<String, Object> getProperties() { return this.properties; }
+    public synchronized OcfResourceSchema getSchema() { return this.schema; }
+
+    // A live map view of the properties, in slot order. Prefer the typed
+    // accessors on hot paths: the view boxes numbers and booleans.
+    public synchronized Map<String, Object> getProperties() {
+        if (this.properties == null) {
+            this.properties = new Properties();
+        }
+        return this.properties;
+    }
+
+    public synchronized int size() { return this.size; }
 
-    public Object getValue(String key) {
-        return this.properties.get(key);
+    public synchronized boolean isEmpty() { return this.size == 0; }
+
+    public synchronized boolean has(String key) {
+        return this.kindOf(this.schema.getSlot(key)) != ABSENT;
+    }
+
+    public synchronized Object getValue(String key) {
+        return this.get(this.schema.getSlot(key));
+    }
+
+    // Numbers are returned as a long, or a double, whatever they were set
+    // as; `defaultValue` is returned for anything else.
+    public synchronized long getLong(String key, long defaultValue) {
+        int slot = this.schema.getSlot(key);
+        switch (this.kindOf(slot)) {
+            case INT:
+            case LONG:
+                return this.bits[slot];
+            case DOUBLE:
+                return (long) Double.longBitsToDouble(this.bits[slot]);
+            case OBJECT:
+                Object value = this.refs[slot];
+                return value instanceof Number ?
+                    ((Number) value).longValue() : defaultValue;
+            default:
+                return defaultValue;
+        }
+    }
+
+    public synchronized double getDouble(String key, double defaultValue) {
+        int slot = this.schema.getSlot(key);
+        switch (this.kindOf(slot)) {
+            case INT:
+            case LONG:
+                return this.bits[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(this.bits[slot]);
+            case OBJECT:
+                Object value = this.refs[slot];
+                return value instanceof Number ?
+                    ((Number) value).doubleValue() : defaultValue;
+            default:
+                return defaultValue;
+        }
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        int slot = this.schema.getSlot(key);
+        return this.kindOf(slot) == BOOLEAN ? this.bits[slot] != 0 : defaultValue;
     }
 
     // ------------------------------------------------------------------------
     // Setters
     // ------------------------------------------------------------------------
 
-    public void setValue(String key, Object value) {
-        this.properties.put(key, value);
+    public synchronized void setValue(String key, Object value) {
+        int slot = this.slotFor(key);
+        if (value instanceof Integer) {
+            this.setBits(slot, INT, ((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            this.setBits(slot, LONG, ((Long) value).longValue());
+        } else if (value instanceof Double) {
+            this.setBits(slot, DOUBLE,
+                Double.doubleToRawLongBits(((Double) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            this.setBits(slot, BOOLEAN, ((Boolean) value).booleanValue() ? 1 : 0);
+        } else {
+            // Including other numbers, so that they come back as they were.
+            this.setRef(slot, value);
+        }
+    }
+
+    public synchronized void setInt(String key, int value) {
+        this.setBits(this.slotFor(key), INT, value);
+    }
+
+    public synchronized void setLong(String key, long value) {
+        this.setBits(this.slotFor(key), LONG, value);
+    }
+
+    public synchronized void setDouble(String key, double value) {
+        this.setBits(this.slotFor(key), DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public synchronized void setBoolean(String key, boolean value) {
+        this.setBits(this.slotFor(key), BOOLEAN, value ? 1 : 0);
+    }
+
+    public synchronized Object remove(String key) {
+        int slot = this.schema.getSlot(key);
+        Object previous = this.get(slot);
+        this.clear(slot);
+        return previous;
+    }
+
+    // Sets all the properties of `other`, without boxing.
+    public void putAll(OcfResourceRepresentation other) {
+        // Copied first, so that the two locks are never held together.
+        OcfResourceRepresentation copy = other.copy();
+        synchronized (this) {
+            this.putAllOf(copy);
+        }
+    }
+
+    public synchronized OcfResourceRepresentation copy() {
+        OcfResourceRepresentation copy = new OcfResourceRepresentation(this.schema);
+        copy.kinds = Arrays.copyOf(this.kinds, this.kinds.length);
+        copy.bits = Arrays.copyOf(this.bits, this.bits.length);
+        copy.refs = this.refs != null ? Arrays.copyOf(this.refs, this.refs.length) : null;
+        copy.size = this.size;
+        return copy;
+    }
+
+    // `other` is a copy, which no other thread sees: its arrays can be
+    // taken as they are.
+    private void putAllOf(OcfResourceRepresentation other) {
+        if (other.schema == this.schema && this.size == 0) {
+            this.kinds = other.kinds;
+            this.bits = other.bits;
+            this.refs = other.refs;
+            this.size = other.size;
+            return;
+        }
+
+        for (int slot = 0; slot < other.kinds.length; slot++) {
+            byte kind = other.kinds[slot];
+            if (kind == ABSENT) {
+                continue;
+            }
+
+            int to = this.slotFor(other.schema.getName(slot));
+            if (kind == OBJECT) {
+                this.setRef(to, other.refs[slot]);
+            } else {
+                this.setBits(to, kind, other.bits[slot]);
+            }
+        }
+    }
+
+    // Moves the properties to `schema`, typically the shared one of the
+    // resource type, once that is known.
+    public synchronized void setSchema(OcfResourceSchema schema) {
+        if (schema == this.schema) {
+            return;
+        }
+
+        OcfResourceRepresentation old = this.copy();
+        this.schema = schema;
+        this.kinds = NO_KINDS;
+        this.bits = NO_BITS;
+        this.refs = null;
+        this.size = 0;
+        this.putAllOf(old);
     }
 
     // ------------------------------------------------------------------------
     // Conversions
     // ------------------------------------------------------------------------
 
-    public JSONObject toJSON() throws JSONException {
+    public synchronized JSONObject toJSON() throws JSONException {
         JSONObject o = new JSONObject();
-        for (Map.Entry<String, Object> entry : this.properties.entrySet()) {
-            String key = entry.getKey();
-            Object val = entry.getValue();
-
-            if (val.getClass().isArray()) {
-                JSONArray a = new JSONArray();
-                for (int i = 0; i < Array.getLength(val); i++) {
-                    a.put(Array.get(val, i));
-                }
-                o.put(key, a);
-            } else {
-                o.put(key, val);
+        for (int slot = 0; slot < this.kinds.length; slot++) {
+            switch (this.kinds[slot]) {
+                case ABSENT:
+                    break;
+                case INT:
+                case LONG:
+                    o.put(this.schema.getName(slot), this.bits[slot]);
+                    break;
+                case DOUBLE:
+                    o.put(this.schema.getName(slot),
+                        Double.longBitsToDouble(this.bits[slot]));
+                    break;
+                case BOOLEAN:
+                    o.put(this.schema.getName(slot), this.bits[slot] != 0);
+                    break;
+                default:
+                    o.put(this.schema.getName(slot), toJSONValue(this.refs[slot]));
+                    break;
             }
         }
 
         return o;
     }
 
+    private static Object toJSONValue(Object val) throws JSONException {
+        if (val == null || !val.getClass().isArray()) {
+            return val;
+        }
+
+        JSONArray a = new JSONArray();
+        if (val instanceof int[]) {
+            for (int v: (int[]) val) {
+                a.put(v);
+            }
+        } else if (val instanceof double[]) {
+            for (double v: (double[]) val) {
+                a.put(v);
+            }
+        } else if (val instanceof boolean[]) {
+            for (boolean v: (boolean[]) val) {
+                a.put(v);
+            }
+        } else if (val instanceof Object[]) {
+            for (Object v: (Object[]) val) {
+                a.put(v);
+            }
+        } else {
+            for (int i = 0; i < Array.getLength(val); i++) {
+                a.put(Array.get(val, i));
+            }
+        }
+        return a;
+    }
+
+    public synchronized void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        for (int slot = 0; slot < this.kinds.length; slot++) {
+            byte kind = this.kinds[slot];
+            // As in `toJSON`, where putting null removes the property.
+            if (kind == ABSENT || (kind == OBJECT && this.refs[slot] == null)) {
+                continue;
+            }
+
+            writer.name(this.schema.getName(slot));
+            switch (kind) {
+                case INT:
+                case LONG:
+                    writer.value(this.bits[slot]);
+                    break;
+                case DOUBLE:
+                    writer.value(Double.longBitsToDouble(this.bits[slot]));
+                    break;
+                case BOOLEAN:
+                    writer.value(this.bits[slot] != 0);
+                    break;
+                default:
+                    writeValue(writer, this.refs[slot]);
+                    break;
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(OcfWriter writer, Object val) throws JSONException {
+        if (val == null || !val.getClass().isArray()) {
+            writer.value(val);
+            return;
+        }
+
+        writer.beginArray();
+        if (val instanceof int[]) {
+            for (int v: (int[]) val) {
+                writer.value(v);
+            }
+        } else if (val instanceof double[]) {
+            for (double v: (double[]) val) {
+                writer.value(v);
+            }
+        } else if (val instanceof boolean[]) {
+            for (boolean v: (boolean[]) val) {
+                writer.value(v);
+            }
+        } else if (val instanceof Object[]) {
+            for (Object v: (Object[]) val) {
+                writer.value(v);
+            }
+        } else {
+            for (int i = 0; i < Array.getLength(val); i++) {
+                writer.value(Array.get(val, i));
+            }
+        }
+        writer.endArray();
+    }
+
     public static OcfResourceRepresentation fromJSON(JSONObject obj)
         throws JSONException
     {
-        OcfResourceRepresentation repr = new OcfResourceRepresentation();
+        return fromJSON(obj, OcfResourceSchema.createPrivate());
+    }
+
+    public static OcfResourceRepresentation fromJSON(
+        JSONObject obj, OcfResourceSchema schema) throws JSONException
+    {
+        OcfResourceRepresentation repr = new OcfResourceRepresentation(schema);
         Iterator<String> it = obj.keys();
         while(it.hasNext()) {
             String key = it.next();
@@ -76,4 +363,180 @@ public class OcfResourceRepresentation implements OcfObjectInterface {
 
         return repr;
     }
+
+    // ------------------------------------------------------------------------
+    // Slots
+    // ------------------------------------------------------------------------
+
+    private byte kindOf(int slot) {
+        return slot >= 0 && slot < this.kinds.length ? this.kinds[slot] : ABSENT;
+    }
+
+    private Object get(int slot) {
+        switch (this.kindOf(slot)) {
+            case INT:
+                return Integer.valueOf((int) this.bits[slot]);
+            case LONG:
+                return Long.valueOf(this.bits[slot]);
+            case DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(this.bits[slot]));
+            case BOOLEAN:
+                return Boolean.valueOf(this.bits[slot] != 0);
+            case OBJECT:
+                return this.refs[slot];
+            default:
+                return null;
+        }
+    }
+
+    private int slotFor(String key) {
+        int slot = this.schema.getOrAddSlot(key);
+        if (slot >= this.kinds.length) {
+            // Geometric growth, for representations built one new property
+            // at a time, as with private schemas.
+            int length = Math.max(Math.max(slot + 1, this.schema.size()),
+                                  this.kinds.length * 2);
+            this.kinds = Arrays.copyOf(this.kinds, length);
+            this.bits = Arrays.copyOf(this.bits, length);
+            if (this.refs != null) {
+                this.refs = Arrays.copyOf(this.refs, length);
+            }
+        }
+        return slot;
+    }
+
+    private void setBits(int slot, byte kind, long bits) {
+        if (this.kinds[slot] == ABSENT) {
+            this.size++;
+        } else if (this.kinds[slot] == OBJECT) {
+            this.refs[slot] = null;
+        }
+        this.kinds[slot] = kind;
+        this.bits[slot] = bits;
+    }
+
+    private void setRef(int slot, Object value) {
+        if (this.refs == null) {
+            this.refs = new Object[this.kinds.length];
+        }
+        if (this.kinds[slot] == ABSENT) {
+            this.size++;
+        }
+        this.kinds[slot] = OBJECT;
+        this.bits[slot] = 0;
+        this.refs[slot] = value;
+    }
+
+    private void clear(int slot) {
+        if (this.kindOf(slot) == ABSENT) {
+            return;
+        }
+        this.kinds[slot] = ABSENT;
+        this.bits[slot] = 0;
+        if (this.refs != null) {
+            this.refs[slot] = null;
+        }
+        this.size--;
+    }
+
+    // ------------------------------------------------------------------------
+    // Map view
+    // ------------------------------------------------------------------------
+
+    private class Properties extends AbstractMap<String, Object> {
+        private final Set<Map.Entry<String, Object>> entries =
+            new AbstractSet<Map.Entry<String, Object>>() {
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new PropertyIterator();
+                }
+
+                public int size() {
+                    return OcfResourceRepresentation.this.size();
+                }
+            };
+
+        public Set<Map.Entry<String, Object>> entrySet() { return this.entries; }
+
+        public int size() { return OcfResourceRepresentation.this.size(); }
+
+        public boolean containsKey(Object key) {
+            return key instanceof String && OcfResourceRepresentation.this.has((String) key);
+        }
+
+        public Object get(Object key) {
+            return key instanceof String ?
+                OcfResourceRepresentation.this.getValue((String) key) : null;
+        }
+
+        public Object put(String key, Object value) {
+            Object previous = OcfResourceRepresentation.this.getValue(key);
+            OcfResourceRepresentation.this.setValue(key, value);
+            return previous;
+        }
+
+        public Object remove(Object key) {
+            return key instanceof String ?
+                OcfResourceRepresentation.this.remove((String) key) : null;
+        }
+
+        public void clear() {
+            synchronized (OcfResourceRepresentation.this) {
+                for (int slot = 0; slot < kinds.length; slot++) {
+                    OcfResourceRepresentation.this.clear(slot);
+                }
+            }
+        }
+    }
+
+    private class PropertyIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = this.advance(0);
+        private int current = -1;
+
+        private int advance(int slot) {
+            synchronized (OcfResourceRepresentation.this) {
+                while (slot < kinds.length && kinds[slot] == ABSENT) {
+                    slot++;
+                }
+                return slot;
+            }
+        }
+
+        public boolean hasNext() {
+            synchronized (OcfResourceRepresentation.this) {
+                return this.next < kinds.length;
+            }
+        }
+
+        public Map.Entry<String, Object> next() {
+            final String key;
+            Object value;
+            synchronized (OcfResourceRepresentation.this) {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                this.current = this.next;
+                this.next = this.advance(this.next + 1);
+
+                key = schema.getName(this.current);
+                value = get(this.current);
+            }
+
+            return new AbstractMap.SimpleEntry<String, Object>(key, value) {
+                public Object setValue(Object value) {
+                    OcfResourceRepresentation.this.setValue(key, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        public void remove() {
+            if (this.current < 0) {
+                throw new IllegalStateException();
+            }
+            synchronized (OcfResourceRepresentation.this) {
+                clear(this.current);
+            }
+            this.current = -1;
+        }
+    }
 }
@@ -0,0 +1,119 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+// Maps the property names of a representation to slots, i.e. indexes in
+// its value arrays (see `OcfResourceRepresentation`). All resources of a
+// resource type share a schema, so a property has the same slot in all of
+// them, and names are stored once. A schema only grows: it is bounded by
+// the property names of its resource type.
+//
+// Schemas are thread safe, private ones included, as representations that
+// share them (e.g. through `copy`) may be used on different threads. Lookups
+// take no lock. Small schemas, like most private ones, are searched linearly,
+// and only larger ones get an index.
+public final class OcfResourceSchema {
+    private static final int MAX_LINEAR = 8;
+
+    private static final ConcurrentMap<String, OcfResourceSchema> byResourceType =
+        new ConcurrentHashMap<String, OcfResourceSchema>();
+
+    private final boolean shared;
+    // Null until the schema has more than `MAX_LINEAR` names.
+    private volatile ConcurrentMap<String, Integer> slots;
+
+    // Grown geometrically. A new name is stored, and `names` and `size`
+    // published, before its slot is added to `slots`, so that whoever finds
+    // a slot can get its name.
+    private volatile String[] names = new String[4];
+    private volatile int size = 0;
+
+    private OcfResourceSchema(boolean shared) {
+        this.shared = shared;
+    }
+
+    public static OcfResourceSchema forResourceType(String resourceType) {
+        OcfResourceSchema schema = byResourceType.get(resourceType);
+        if (schema == null) {
+            schema = new OcfResourceSchema(true);
+            OcfResourceSchema existing = byResourceType.putIfAbsent(resourceType, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+
+    // A schema for a single representation, and its copies.
+    public static OcfResourceSchema createPrivate() {
+        return new OcfResourceSchema(false);
+    }
+
+    public boolean isShared() { return this.shared; }
+
+    // Returns -1 for unknown properties.
+    public int getSlot(String name) {
+        ConcurrentMap<String, Integer> slots = this.slots;
+        if (slots != null) {
+            Integer slot = slots.get(name);
+            return slot != null ? slot.intValue() : -1;
+        }
+
+        // `size` is read before `names`, which is at least as recent.
+        int size = this.size;
+        String[] names = this.names;
+        for (int slot = 0; slot < size; slot++) {
+            if (names[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public int getOrAddSlot(String name) {
+        int slot = this.getSlot(name);
+        return slot >= 0 ? slot : this.addSlot(name);
+    }
+
+    private synchronized int addSlot(String name) {
+        int existing = this.getSlot(name);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        int slot = this.size;
+        String[] names = this.names;
+        if (slot == names.length) {
+            names = Arrays.copyOf(names, slot * 2);
+        }
+        names[slot] = name;
+
+        this.names = names;
+        this.size = slot + 1;
+
+        ConcurrentMap<String, Integer> slots = this.slots;
+        if (slots != null) {
+            slots.put(name, slot);
+        } else if (slot + 1 > MAX_LINEAR) {
+            slots = new ConcurrentHashMap<String, Integer>();
+            for (int i = 0; i <= slot; i++) {
+                slots.put(names[i], i);
+            }
+            this.slots = slots;
+        }
+
+        return slot;
+    }
+
+    public String getName(int slot) {
+        return this.names[slot];
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
@@ -18,4 +18,10 @@ public class OcfResourceUpdateEvent implements OcfObjectInterface {
 
         return o;
     }
+
+    public void write(OcfWriter writer) throws JSONException {
+        writer.beginObject();
+        writer.property("updates", this.updates);
+        writer.endObject();
+    }
 }
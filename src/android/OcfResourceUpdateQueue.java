@@ -0,0 +1,340 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Android
+import android.util.Log;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A bounded buffer of resource updates, waiting to be consumed by the
+// frontend. What happens when an update arrives for a resource that already
+// has one queued, or when the buffer is full, depends on the policy of that
+// resource (or the global one):
+//
+//  * COALESCE: the queued update is replaced by the new one (latest value
+//    wins); when full, the oldest update is dropped.
+//  * DROP_OLDEST: every update is queued; when full, the oldest is dropped.
+//  * BLOCK: every update is queued; when full, the producer waits up to
+//    `blockTimeout` ms for the frontend to drain, then the new update is
+//    dropped.
+public class OcfResourceUpdateQueue {
+    public enum Policy {
+        COALESCE, DROP_OLDEST, BLOCK;
+
+        public static Policy fromString(String s) throws JSONException {
+            if ("coalesce".equals(s)) {
+                return COALESCE;
+            } else if ("drop-oldest".equals(s)) {
+                return DROP_OLDEST;
+            } else if ("block".equals(s)) {
+                return BLOCK;
+            }
+            throw new JSONException("Invalid update policy: " + s);
+        }
+
+        public String toString() {
+            return this.name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    public static class Update {
+        private final String key;
+        private final OcfResource resource;
+        private OcfResourceRepresentation repr;
+        private final long queuedAt;
+
+        public Update(String key, OcfResource resource, OcfResourceRepresentation repr) {
+            this.key = key;
+            this.resource = resource;
+            this.repr = repr;
+            this.queuedAt = System.nanoTime();
+        }
+
+        public String getKey() { return this.key; }
+
+        public OcfResource getResource() { return this.resource; }
+
+        public OcfResourceRepresentation getRepresentation() { return this.repr; }
+    }
+
+    // Parsed `configure` options: null fields are left as they are, and in
+    // `resourcePolicies`, null values stand for removals.
+    public static class Config {
+        private Integer capacity;
+        private Integer blockTimeout;
+        private Policy policy;
+        private Boolean delta;
+        private Map<String, Policy> resourcePolicies = new HashMap<String, Policy>();
+
+        public static Config fromJSON(JSONObject options) throws JSONException {
+            Config config = new Config();
+            if (options == null) {
+                return config;
+            }
+
+            // Values that aren't numbers are ignored.
+            int capacity = options.optInt("capacity", Integer.MIN_VALUE);
+            if (capacity != Integer.MIN_VALUE) {
+                config.capacity = Math.max(1, capacity);
+            }
+            int blockTimeout = options.optInt("blockTimeout", Integer.MIN_VALUE);
+            if (blockTimeout != Integer.MIN_VALUE) {
+                config.blockTimeout = Math.max(0, blockTimeout);
+            }
+            if (options.has("policy")) {
+                config.policy = Policy.fromString(options.getString("policy"));
+            }
+            if (options.has("delta")) {
+                config.delta = options.getBoolean("delta");
+            }
+
+            JSONObject policies = options.optJSONObject("resourcePolicies");
+            if (policies != null) {
+                Iterator<String> it = policies.keys();
+                while (it.hasNext()) {
+                    String key = it.next();
+                    config.resourcePolicies.put(key, policies.isNull(key) ?
+                        null : Policy.fromString(policies.getString(key)));
+                }
+            }
+
+            return config;
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int DEFAULT_BLOCK_TIMEOUT = 100;
+
+    private int capacity = DEFAULT_CAPACITY;
+    private int blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    private Policy policy = Policy.COALESCE;
+    private Map<String, Policy> resourcePolicies = new HashMap<String, Policy>();
+
+    private ArrayDeque<Update> queue = new ArrayDeque<Update>();
+
+    // The queued update of each resource using the COALESCE policy.
+    private Map<String, Update> coalescable = new HashMap<String, Update>();
+
+    private long dropped = 0;
+    private long coalesced = 0;
+
+    // Non-null in delta mode, where drained updates only carry the
+    // properties that changed since the last delivery.
+    private OcfResourceDeltaTracker deltas;
+
+    // If set, records how long updates wait to be drained.
+    private volatile OcfMetrics.Histogram latency;
+
+
+    public void setLatencyHistogram(OcfMetrics.Histogram latency) {
+        this.latency = latency;
+    }
+
+    // Returns whether the queue has grown, i.e. whether there is something
+    // new for the consumer to pick up.
+    public synchronized boolean add(OcfResource resource, OcfResourceRepresentation repr) {
+        String key = resource.getId().getUniqueKey();
+        Policy policy = this.getPolicy(key);
+
+        if (policy == Policy.COALESCE) {
+            Update queued = this.coalescable.get(key);
+            if (queued != null) {
+                queued.repr = repr;
+                this.coalesced++;
+                return false;
+            }
+        }
+
+        if (this.queue.size() >= this.capacity) {
+            if (policy == Policy.BLOCK) {
+                long deadline = System.currentTimeMillis() + this.blockTimeout;
+                long remaining = this.blockTimeout;
+                while (this.queue.size() >= this.capacity && remaining > 0) {
+                    try {
+                        this.wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+
+                if (this.queue.size() >= this.capacity) {
+                    this.dropped++;
+                    return false;
+                }
+            } else {
+                this.dropOldest();
+            }
+        }
+
+        Update update = new Update(key, resource, repr);
+        this.queue.add(update);
+        if (policy == Policy.COALESCE) {
+            this.coalescable.put(key, update);
+        }
+
+        return true;
+    }
+
+    public synchronized List<Update> drain() {
+        List<Update> updates = new ArrayList<Update>(this.queue);
+        this.queue.clear();
+        this.coalescable.clear();
+        this.notifyAll();
+
+        OcfMetrics.Histogram latency = this.latency;
+        if (latency != null) {
+            for (Update update: updates) {
+                latency.recordSince(update.queuedAt);
+            }
+        }
+
+        return updates;
+    }
+
+    // Drains the queue into the format expected by the frontend: an array of
+    // `{<resource key>: <properties>}` objects or, in delta mode, of deltas
+    // as described in `OcfResourceDeltaTracker`. The array is pre-encoded,
+    // and only meant to be sent as is.
+    public JSONArray drainToJSON() throws JSONException {
+        OcfJsonWriter writer = OcfJsonWriter.obtain();
+        int count = this.drainTo(writer);
+        return writer.toJSONArray(count);
+    }
+
+    // Like `drainToJSON`, streaming into `writer`. Returns the number of
+    // updates written.
+    public int drainTo(OcfWriter writer) throws JSONException {
+        int count = 0;
+        OcfResourceDeltaTracker deltas;
+        synchronized (this) {
+            deltas = this.deltas;
+        }
+
+        writer.beginArray();
+        if (deltas == null) {
+            for (Update update: this.drain()) {
+                writer.beginObject();
+                writer.property(update.getKey(), update.getRepresentation());
+                writer.endObject();
+                count++;
+            }
+        } else {
+            // Deltas must be computed in the order they are drained.
+            synchronized (deltas) {
+                for (Update update: this.drain()) {
+                    OcfResourceDeltaTracker.Delta delta = deltas.toDelta(
+                        update.getKey(), update.getRepresentation());
+                    if (delta != null) {
+                        writer.value(delta);
+                        count++;
+                    }
+                }
+            }
+        }
+        writer.endArray();
+
+        return count;
+    }
+
+    // Drops the state kept for `key`, e.g. once the resource is gone.
+    public void forget(String key) {
+        OcfResourceDeltaTracker deltas;
+        synchronized (this) {
+            deltas = this.deltas;
+        }
+        if (deltas != null) {
+            deltas.forget(key);
+        }
+    }
+
+    public synchronized int size() { return this.queue.size(); }
+
+    public synchronized long getDroppedCount() { return this.dropped; }
+
+    public synchronized long getCoalescedCount() { return this.coalesced; }
+
+    private void dropOldest() {
+        Update oldest = this.queue.poll();
+        if (this.coalescable.get(oldest.getKey()) == oldest) {
+            this.coalescable.remove(oldest.getKey());
+        }
+        this.dropped++;
+    }
+
+    private Policy getPolicy(String key) {
+        Policy policy = this.resourcePolicies.get(key);
+        return policy != null ? policy : this.policy;
+    }
+
+    // ------------------------------------------------------------------------
+    // Configuration
+    // ------------------------------------------------------------------------
+
+    // Applies `options` as a whole: if any of them is invalid, none is.
+    public void configure(JSONObject options) throws JSONException {
+        this.configure(Config.fromJSON(options));
+    }
+
+    // Applies options parsed beforehand, e.g. together with those of other
+    // components, so that none is applied unless all are valid.
+    public synchronized void configure(Config config) throws JSONException {
+        if (config.capacity != null) {
+            this.capacity = config.capacity;
+        }
+        if (config.blockTimeout != null) {
+            this.blockTimeout = config.blockTimeout;
+        }
+        if (config.policy != null) {
+            this.policy = config.policy;
+        }
+        if (config.delta != null) {
+            if (config.delta && this.deltas == null) {
+                this.deltas = new OcfResourceDeltaTracker();
+            } else if (!config.delta) {
+                this.deltas = null;
+            }
+        }
+        for (Map.Entry<String, Policy> entry: config.resourcePolicies.entrySet()) {
+            if (entry.getValue() == null) {
+                this.resourcePolicies.remove(entry.getKey());
+            } else {
+                this.resourcePolicies.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        while (this.queue.size() > this.capacity) {
+            this.dropOldest();
+        }
+
+        // Producers blocked on a full queue may fit now.
+        this.notifyAll();
+
+        Log.d("CordovaPluginOCF", "Resource update queue: " + this.toJSON().toString());
+    }
+
+    public synchronized JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("capacity", this.capacity);
+        o.put("policy", this.policy.toString());
+        o.put("blockTimeout", this.blockTimeout);
+        o.put("delta", this.deltas != null);
+        o.put("size", this.queue.size());
+        o.put("dropped", this.dropped);
+        o.put("coalesced", this.coalesced);
+
+        return o;
+    }
+}
@@ -0,0 +1,162 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Cordova
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+// Android
+import android.util.Log;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A push channel for resource updates. The backend notifies the stream every
+// time it queues an update, and the stream drains the backend (via the same
+// `getResourceUpdates` used by the polling path) whenever `maxBatchSize`
+// notifications have piled up or `maxLatency` milliseconds have passed since
+// the first one, whichever comes first. Batches are encoded in `format`
+// (see `OcfWriter`).
+//
+// Closing the stream releases the callback with an error, so the frontend
+// knows to fall back to polling. A flush in progress is delivered first:
+// once drained, updates are no longer in the backend queue, so dropping them
+// would lose them. Nothing is sent after that.
+public class OcfResourceUpdateStream {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    public static final int DEFAULT_MAX_LATENCY = 50;
+
+    private static final String CLOSED = "update stream closed";
+
+    private OcfBackendInterface backend;
+    private CallbackContext cc;
+    private int maxBatchSize;
+    private int maxLatency;
+    private String format;
+    private OcfMetrics metrics;
+
+    // Number of updates notified since the last flush.
+    private int pending = 0;
+    private boolean closed = false;
+
+    // All flushes happen on this thread, so the listener threads that notify
+    // us never cross the bridge themselves.
+    private ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> flushTask;
+
+    // Held while draining and sending a batch, and while sending the final
+    // result, so that `close` waits for a flush in progress.
+    private final Object sendLock = new Object();
+
+    private final Runnable flushRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+
+    public OcfResourceUpdateStream(
+        OcfBackendInterface backend, CallbackContext cc,
+        int maxBatchSize, int maxLatency, String format, OcfMetrics metrics)
+    {
+        this.backend = backend;
+        this.cc = cc;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLatency = Math.max(0, maxLatency);
+        this.format = format;
+        this.metrics = metrics;
+    }
+
+    public static OcfResourceUpdateStream fromJSON(
+        OcfBackendInterface backend, CallbackContext cc, JSONObject options,
+        OcfMetrics metrics)
+        throws JSONException
+    {
+        int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        int maxLatency = DEFAULT_MAX_LATENCY;
+
+        if (options != null) {
+            maxBatchSize = options.optInt("maxBatchSize", maxBatchSize);
+            maxLatency = options.optInt("maxLatency", maxLatency);
+        }
+
+        return new OcfResourceUpdateStream(
+            backend, cc, maxBatchSize, maxLatency, OcfWriter.getFormat(options),
+            metrics);
+    }
+
+    public synchronized void notifyUpdate() {
+        if (this.closed) {
+            return;
+        }
+
+        this.pending++;
+        if (this.pending >= this.maxBatchSize) {
+            if (this.flushTask != null) {
+                this.flushTask.cancel(false);
+            }
+            this.flushTask = this.scheduler.schedule(
+                this.flushRunnable, 0, TimeUnit.MILLISECONDS);
+        } else if (this.flushTask == null) {
+            this.flushTask = this.scheduler.schedule(
+                this.flushRunnable, this.maxLatency, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            if (this.flushTask != null) {
+                this.flushTask.cancel(false);
+                this.flushTask = null;
+            }
+            this.scheduler.shutdown();
+        }
+
+        // Release the callback on the JS side, after any batch being flushed.
+        synchronized (this.sendLock) {
+            this.cc.sendPluginResult(
+                new PluginResult(PluginResult.Status.ERROR, CLOSED));
+        }
+    }
+
+    private void flush() {
+        // The backend is drained outside of our monitor: backends notify us
+        // while holding their own, so holding ours here could deadlock.
+        // Backends also close us while holding their lock, so nothing done
+        // under the send lock may need it: draining only takes the queue's.
+        synchronized (this.sendLock) {
+            synchronized (this) {
+                this.flushTask = null;
+                this.pending = 0;
+                if (this.closed) {
+                    return;
+                }
+            }
+
+            try {
+                OcfWriter writer = OcfWriter.obtain(this.format);
+                if (this.backend.getResourceUpdates(writer) > 0) {
+                    PluginResult result = OcfPluginResults.fromWriter(
+                        writer, this.metrics, "subscribeResourceUpdates");
+                    result.setKeepCallback(true);
+                    this.cc.sendPluginResult(result);
+                }
+            } catch (JSONException ex) {
+                Log.e("CordovaPluginOCF", "Unable to flush resource updates: " + ex.getMessage());
+            }
+        }
+    }
+}
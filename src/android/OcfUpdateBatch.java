@@ -0,0 +1,168 @@
+package com.intel.cordova.plugin.ocf;
+
+// Cordova
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+
+// Third party
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A batch of resource updates, issued concurrently up to `maxInFlight` at a
+// time. Backends implement `issue`, and report the outcome of each item via
+// `succeed` or `fail`, either synchronously or from a native callback. Once
+// every item has an outcome, the per-item results are sent back in a single
+// callback:
+//
+//   {"results": [{"key": <resource key>, "status": "ok"}, ...]}
+//
+// where failed items have `"status": "error"` and an `error` message.
+public abstract class OcfUpdateBatch {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final JSONArray items;
+    private final CallbackContext cc;
+    private final int maxInFlight;
+    private final JSONObject[] results;
+
+    private int next = 0;
+    private int inFlight = 0;
+    private int completed = 0;
+
+    // Items completing synchronously re-enter `pump`: instead of recursing,
+    // they flag the running pump to go around once more.
+    private boolean pumping = false;
+    private boolean repump = false;
+
+    public OcfUpdateBatch(JSONArray items, JSONObject options, CallbackContext cc) {
+        this.items = items;
+        this.cc = cc;
+        this.maxInFlight = Math.max(1, options != null ?
+            options.optInt("maxInFlight", DEFAULT_MAX_IN_FLIGHT) :
+            DEFAULT_MAX_IN_FLIGHT);
+        this.results = new JSONObject[items.length()];
+    }
+
+    protected abstract void issue(int index, OcfResource resource);
+
+    public void start() {
+        if (this.items.length() == 0) {
+            this.sendResults();
+        } else {
+            this.pump();
+        }
+    }
+
+    public void succeed(int index) {
+        this.finish(index, null);
+    }
+
+    public void fail(int index, String reason) {
+        this.finish(index, reason == null ? "unknown error" : reason);
+    }
+
+    private void finish(int index, String error) {
+        boolean done;
+
+        synchronized (this) {
+            if (this.results[index] != null) {
+                return;
+            }
+
+            JSONObject result = new JSONObject();
+            try {
+                result.put("key", this.getKey(index));
+                result.put("status", error == null ? "ok" : "error");
+                if (error != null) {
+                    result.put("error", error);
+                }
+            } catch (JSONException ex) {
+                // Only thrown for non-finite numbers.
+            }
+
+            this.results[index] = result;
+            this.inFlight--;
+            this.completed++;
+            done = this.completed == this.results.length;
+        }
+
+        if (done) {
+            this.sendResults();
+        } else {
+            this.pump();
+        }
+    }
+
+    private synchronized int claimNext() {
+        if (this.next < this.results.length && this.inFlight < this.maxInFlight) {
+            this.inFlight++;
+            return this.next++;
+        }
+
+        return -1;
+    }
+
+    private void pump() {
+        synchronized (this) {
+            if (this.pumping) {
+                this.repump = true;
+                return;
+            }
+            this.pumping = true;
+        }
+
+        while (true) {
+            int index = this.claimNext();
+            if (index < 0) {
+                synchronized (this) {
+                    if (!this.repump) {
+                        this.pumping = false;
+                        return;
+                    }
+                    this.repump = false;
+                }
+                continue;
+            }
+
+            OcfResource resource;
+            try {
+                resource = OcfResource.fromJSON(this.items.getJSONObject(index));
+            } catch (JSONException ex) {
+                this.fail(index, "Error parsing resource: " + ex.getMessage());
+                continue;
+            }
+
+            this.issue(index, resource);
+        }
+    }
+
+    private String getKey(int index) {
+        JSONObject item = this.items.optJSONObject(index);
+        if (item == null) {
+            return null;
+        }
+
+        try {
+            return OcfResourceId.fromJSON(item.optJSONObject("id")).getUniqueKey();
+        } catch (JSONException ex) {
+            return null;
+        }
+    }
+
+    private void sendResults() {
+        JSONArray array = new JSONArray();
+        for (JSONObject result: this.results) {
+            array.put(result);
+        }
+
+        try {
+            JSONObject o = new JSONObject();
+            o.put("results", array);
+            this.cc.sendPluginResult(new PluginResult(PluginResult.Status.OK, o));
+        } catch (JSONException ex) {
+            this.cc.error(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.intel.cordova.plugin.ocf;
+
+// Java
+import java.util.List;
+
+// Third party
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+// A streaming writer for the plugin's objects, used instead of building a
+// `JSONObject` tree when an object is only going to be sent to the frontend.
+// `OcfObjectInterface.write` describes an object as a sequence of calls on a
+// writer; subclasses decide how that is encoded.
+//
+// Names and values are written in the same order, and with the same rules,
+// as the `JSONObject` returned by `toJSON`: in particular, `property` skips
+// null values, just like `JSONObject.put` does.
+//
+// Calls that return bulk data let the frontend choose the encoding with a
+// `format` option: "json" (the default) or "cbor".
+public abstract class OcfWriter {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_CBOR = "cbor";
+
+    // Returns the calling thread's writer for `format`, ready to use.
+    public static OcfWriter obtain(String format) throws JSONException {
+        if (format == null || FORMAT_JSON.equals(format)) {
+            return OcfJsonWriter.obtain();
+        } else if (FORMAT_CBOR.equals(format)) {
+            return OcfCborWriter.obtain();
+        }
+        throw new JSONException("Invalid format: " + format);
+    }
+
+    // The format requested by a call's `options`.
+    public static String getFormat(JSONObject options) throws JSONException {
+        String format = options != null ?
+            options.optString("format", FORMAT_JSON) : FORMAT_JSON;
+        if (!FORMAT_JSON.equals(format) && !FORMAT_CBOR.equals(format)) {
+            throw new JSONException("Invalid format: " + format);
+        }
+        return format;
+    }
+
+    // Size of what was written so far: bytes for binary formats, characters
+    // for text ones.
+    public abstract int size();
+
+    public abstract OcfWriter beginObject() throws JSONException;
+
+    public abstract OcfWriter endObject() throws JSONException;
+
+    public abstract OcfWriter beginArray() throws JSONException;
+
+    public abstract OcfWriter endArray() throws JSONException;
+
+    public abstract OcfWriter name(String name) throws JSONException;
+
+    public abstract OcfWriter value(String value) throws JSONException;
+
+    public abstract OcfWriter value(boolean value) throws JSONException;
+
+    public abstract OcfWriter value(Number value) throws JSONException;
+
+    // Primitive numbers, written as their boxed forms would be. Subclasses
+    // override these to avoid boxing.
+    public OcfWriter value(long value) throws JSONException {
+        return this.value(Long.valueOf(value));
+    }
+
+    public OcfWriter value(double value) throws JSONException {
+        return this.value(Double.valueOf(value));
+    }
+
+    // Any other value: null, `JSONObject`, `JSONArray`, or an object that
+    // org.json would write as its `toString()`.
+    public abstract OcfWriter value(Object value) throws JSONException;
+
+    public OcfWriter value(OcfObjectInterface value) throws JSONException {
+        value.write(this);
+        return this;
+    }
+
+    public OcfWriter property(String name, Object value) throws JSONException {
+        if (value == null) {
+            return this;
+        }
+
+        return this.name(name).value(value);
+    }
+
+    public OcfWriter property(String name, boolean value) throws JSONException {
+        return this.name(name).value(value);
+    }
+
+    public OcfWriter property(String name, long value) throws JSONException {
+        return this.name(name).value(value);
+    }
+
+    public OcfWriter property(String name, OcfObjectInterface value)
+        throws JSONException
+    {
+        return this.name(name).value(value);
+    }
+
+    // Writes `values` as `new JSONArray(values)` would: a null list is an
+    // empty array.
+    public OcfWriter stringArray(List<String> values) throws JSONException {
+        this.beginArray();
+        if (values != null) {
+            for (String value: values) {
+                this.value(value);
+            }
+        }
+        return this.endArray();
+    }
+}
@@ -27,6 +27,22 @@ exports.defineAutoTests = function() {
             });
         });
 
+        it('failed setBackend keeps the old backend', function(done) {
+            ocf.setBackend("mock").then(function() {
+                return ocf.setBackend("faulty:foo").then(function() {
+                    throw new Error("Promise should not be resolved");
+                }, function() {
+                    return ocf.getMetrics();
+                });
+            }).then(function(metrics) {
+                expect(ocf.backend).toBe("mock");
+                expect(metrics.gauges["updates.queued"]).toBeDefined();
+                done();
+            }, function(error) {
+                done(new Error(error));
+            });
+        });
+
         it('setting onresourcefound works', function() {
             expect(ocf.onresourcefound).toBeDefined();
             ocf.onresourcefound = function(event) { return "foo"; }
@@ -103,6 +119,78 @@ exports.defineAutoTests = function() {
             });
         });
 
+        it('configureUpdates works', function(done) {
+            expect(ocf.configureUpdates).toBeDefined();
+            ocf.setBackend("mock").then(function() {
+                ocf.configureUpdates({
+                    capacity: 10,
+                    policy: "drop-oldest"
+                }).then(function(status) {
+                    expect(status.capacity).toBe(10);
+                    expect(status.policy).toBe("drop-oldest");
+                    expect(status.dropped).toBe(0);
+                    expect(status.coalesced).toBe(0);
+                    // An invalid option leaves all the others unapplied.
+                    var format = ocf.updateStreamOptions.format;
+                    return ocf.configureUpdates({capacity: 20, policy: "foo"}).then(function() {
+                        throw new Error("Promise should not be resolved");
+                    }, function() {
+                        return ocf.configureUpdates({capacity: 20, format: "foo"}).then(function() {
+                            throw new Error("Promise should not be resolved");
+                        }, function(error) {
+                            expect(error).toContain("Invalid format");
+                            expect(ocf.updateStreamOptions.format).toBe(format);
+                            return ocf.configureUpdates({
+                                capacity: 20,
+                                delivery: {minInterval: 100},
+                                resourceDelivery: {"a/b": {deadband: {x: {}}}}
+                            }).then(function() {
+                                throw new Error("Promise should not be resolved");
+                            }, function() {
+                                return ocf.configureUpdates();
+                            });
+                        });
+                    });
+                }).then(function(status) {
+                    expect(status.capacity).toBe(10);
+                    expect(status.delivery.policy).toBe(null);
+                    expect(status.delivery.resourcePolicies).toBe(0);
+                    done();
+                }, function(error) {
+                    done(error);
+                });
+            });
+        });
+
+        it('update stream resubscribes', function(done) {
+            ocf.setBackend("mock").then(function() {
+                // Replacing the subscription keeps the stream active.
+                return ocf.configureUpdates({format: "cbor"});
+            }).then(function() {
+                return ocf.configureUpdates({format: "json"});
+            }).then(function() {
+                setTimeout(function() {
+                    expect(ocf.updateStreamActive).toBe(true);
+
+                    // Closing it natively falls back to polling, which
+                    // subscribes again.
+                    cordova.exec(function() {
+                        setTimeout(function() {
+                            expect(ocf.updateStreamActive).toBe(false);
+                            setTimeout(function() {
+                                expect(ocf.updateStreamActive).toBe(true);
+                                done();
+                            }, 2500);
+                        }, 100);
+                    }, function(error) {
+                        done(new Error(error));
+                    }, "OcfPlugin", "unsubscribeResourceUpdates", []);
+                }, 100);
+            }, function(error) {
+                done(new Error(error));
+            });
+        });
+
         it('update works', function(done) {
             ocf.resources = [];
             ocf.setBackend("mock").then(function() {
@@ -134,5 +222,470 @@ exports.defineAutoTests = function() {
                 });
             });
         });
+
+        it('update with delta mode works', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                return ocf.configureUpdates({delta: true});
+            }).then(function(status) {
+                expect(status.delta).toBe(true);
+
+                ocf.onresourcefound = function(event) {
+                    var resource = event.resource;
+
+                    resource.onupdate = function(event) {
+                        expect(event.updates.length).toBe(1);
+                        expect(event.updates[0]["127.0.0.1/delta-test"].foo).toBe("bar");
+                        expect(resource.properties.foo).toBe("bar");
+                        expect(resource.properties.some_int).toBeUndefined();
+                        done();
+                    };
+
+                    ocf.update({
+                        "id": {
+                            "deviceId": "127.0.0.1",
+                            "resourcePath": "/delta-test"
+                        },
+                        "properties": {
+                            "foo": "bar"
+                        }
+                    });
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/delta-test",
+                    resourceTypes: ["test1"]
+                });
+            });
+        });
+
+        it('updateResources works', function(done) {
+            var i, resources = [];
+
+            for (i = 0; i < 5; i++) {
+                resources.push({
+                    "id": {
+                        "deviceId": "127.0.0.1",
+                        "resourcePath": "/batch-test-" + i
+                    },
+                    "properties": {
+                        "value": i
+                    }
+                });
+            }
+
+            expect(ocf.updateResources).toBeDefined();
+            ocf.setBackend("mock").then(function() {
+                return ocf.updateResources(resources, {maxInFlight: 2});
+            }).then(function(results) {
+                expect(results.length).toBe(5);
+                for (i = 0; i < 5; i++) {
+                    expect(results[i].key).toBe("127.0.0.1/batch-test-" + i);
+                    expect(results[i].status).toBe("ok");
+                }
+                done();
+            }, function(error) {
+                done(new Error(error));
+            });
+        });
+
+        it('getProperties works', function(done) {
+            ocf.resources = [];
+            expect(ocf.getProperties).toBeDefined();
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    ocf.getProperties([
+                        "127.0.0.1/properties-test",
+                        "127.0.0.1/unknown"
+                    ]).then(function(resources) {
+                        expect(resources.length).toBe(1);
+                        expect(resources[0].key).toBe("127.0.0.1/properties-test");
+                        expect(resources[0].properties.some_int).toBe(1);
+                        expect(resources[0].properties.some_string).toBe("s");
+                        done();
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/properties-test",
+                    resourceTypes: ["test1"]
+                });
+            });
+        });
+
+        it('getExecutorStats works', function(done) {
+            expect(ocf.getExecutorStats).toBeDefined();
+            ocf.setBackend("mock").then(function() {
+                return ocf.findDevices();
+            }).then(function() {
+                return ocf.getExecutorStats();
+            }).then(function(stats) {
+                expect(stats.threads).toBeGreaterThan(0);
+                expect(stats.queueDepth).toBeDefined();
+                expect(stats.priorities.user).toBeDefined();
+                expect(stats.priorities.prefetch).toBeDefined();
+                expect(stats.priorities.discovery).toBeDefined();
+                done();
+            }, function(error) {
+                done(new Error(error));
+            });
+        });
+
+        it('cbor format works', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    expect(event.resource.id.deviceId).toBe("127.0.0.1");
+                    expect(event.resource.id.resourcePath).toBe("/cbor-test");
+                    expect(event.resource.resourceTypes).toEqual(["test1"]);
+                    expect(event.resource.properties.some_int).toBe(1);
+
+                    ocf.getProperties(["127.0.0.1/cbor-test"], {format: "cbor"}).then(
+                        function(resources) {
+                            expect(resources.length).toBe(1);
+                            expect(resources[0].properties.some_string).toBe("s");
+                            done();
+                        }, function(error) {
+                            done(new Error(error));
+                        });
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/cbor-test",
+                    resourceTypes: ["test1"],
+                    format: "cbor"
+                });
+            });
+        });
+
+        it('getMetrics works', function(done) {
+            expect(ocf.getMetrics).toBeDefined();
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    ocf.getMetrics().then(function(metrics) {
+                        expect(metrics.counters["discovery.resources"]).toBeGreaterThan(0);
+                        expect(metrics.groups["discovery.resourceTypes"].metrics1).toBeGreaterThan(0);
+                        expect(metrics.groups.bytes.findResources).toBeGreaterThan(0);
+                        expect(metrics.gauges["updates.queued"]).toBeDefined();
+                        expect(metrics.gauges["registry.resources"]).toBeGreaterThan(0);
+                        expect(metrics.executor.priorities).toBeDefined();
+                        done();
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/metrics-test",
+                    resourceTypes: ["metrics1"]
+                });
+            });
+        });
+
+        it('fleet simulation works', function(done) {
+            var simulation = {
+                devices: 4,
+                resourcesPerDevice: 5,
+                seed: 42,
+                discoveryWindow: 100,
+                putLatency: 10
+            };
+
+            ocf.resources = [];
+            ocf.setBackend("mock", {simulation: simulation}).then(function() {
+                ocf.onresourcefound = function(event) {
+                    if (ocf.resources.length < 20) {
+                        return;
+                    }
+
+                    ocf.onresourcefound = null;
+                    ocf.update(ocf.resources[0]).then(function() {
+                        ocf.setBackend("mock").then(done);
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources();
+            });
+        });
+
+        it('resource handles work', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    ocf.onresourcefound = null;
+                    expect(typeof event.resource.id.handle).toBe("number");
+                    ocf.observe(event.resource).then(function(observed) {
+                        expect(observed).toBe(true);
+                        done();
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/handle-test"});
+            });
+        });
+
+        it('liveness tracking works', function(done) {
+            var liveness = {ttl: 100, sweepInterval: 50, probe: false};
+
+            ocf.resources = [];
+            ocf.setBackend("mock", {liveness: liveness}).then(function() {
+                ocf.onresourcelost = function(event) {
+                    ocf.onresourcelost = function() {};
+                    expect(event.resource.id.resourcePath).toBe("/liveness-test");
+                    expect(ocf.resources.length).toBe(0);
+                    ocf.setBackend("mock").then(done);
+                };
+
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/liveness-test"});
+            });
+        });
+
+        it('discovery filters work', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    expect(event.resource.id.resourcePath).toBe("/filter-test/b");
+                    setTimeout(function() {
+                        expect(ocf.resources.length).toBe(1);
+                        done();
+                    }, 100);
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/filter-test/a",
+                    interfaces: ["iface3"]
+                });
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/filter-test/c",
+                    exclude: ["/filter-test/c*"]
+                });
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/filter-test/b",
+                    interfaces: ["iface1", "iface3"],
+                    pathPrefixes: ["/filter-test/"]
+                });
+            });
+        });
+
+        it('delivery policies work', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                return ocf.configureUpdates({delivery: {minInterval: 200}});
+            }).then(function(status) {
+                expect(status.delivery.policy.minInterval).toBe(200);
+
+                ocf.onresourcefound = function(event) {
+                    var resource = event.resource;
+
+                    ocf.onresourcefound = null;
+                    resource.properties.some_int = 2;
+                    ocf.update(resource).then(function() {
+                        resource.properties.some_int = 3;
+                        return ocf.update(resource);
+                    }).then(function() {
+                        setTimeout(function() {
+                            ocf.configureUpdates({delivery: null}).then(function(status) {
+                                expect(status.delivery.throttled).toBeGreaterThan(0);
+                                expect(status.delivery.trailing).toBeGreaterThan(0);
+                                expect(status.delivery.policy).toBe(null);
+                                done();
+                            });
+                        }, 500);
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/delivery-test"});
+            });
+        });
+
+        it('deadbands work', function(done) {
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                return ocf.configureUpdates({delivery: {deadband: {some_int: {absolute: 5}}}});
+            }).then(function() {
+                ocf.onresourcefound = function(event) {
+                    var resource = event.resource;
+
+                    ocf.onresourcefound = null;
+                    resource.properties.some_int = 2;
+                    resource.properties.some_array = [1, 2];
+                    ocf.update(resource).then(function() {
+                        // Within the band, and an equal but new array.
+                        resource.properties.some_int = 3;
+                        resource.properties.some_array = [1, 2];
+                        return ocf.update(resource);
+                    }).then(function() {
+                        return ocf.configureUpdates({delivery: null});
+                    }).then(function(status) {
+                        expect(status.delivery.suppressed).toBe(1);
+                        done();
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/deadband-test"});
+            });
+        });
+
+        it('observation cap works', function(done) {
+            var found = [];
+
+            expect(ocf.observe).toBeDefined();
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                return ocf.configureObservations({autoObserve: false, maxObservations: 1});
+            }).then(function(status) {
+                expect(status.autoObserve).toBe(false);
+                expect(status.maxObservations).toBe(1);
+
+                ocf.onresourcefound = function(event) {
+                    found.push(event.resource);
+                    if (found.length < 2) {
+                        return;
+                    }
+
+                    ocf.onresourcefound = null;
+                    ocf.observe(found[0]).then(function(observed) {
+                        expect(observed).toBe(true);
+                        return ocf.observe(found[1]);
+                    }).then(function() {
+                        return ocf.configureObservations();
+                    }).then(function(status) {
+                        expect(status.observed).toEqual(
+                            [found[1].id.deviceId + found[1].id.resourcePath]);
+                        expect(status.evicted).toBe(1);
+                        return ocf.unobserve(found[1]);
+                    }).then(function() {
+                        return ocf.configureObservations();
+                    }).then(function(status) {
+                        expect(status.observed.length).toBe(0);
+                        done();
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/observe-test1"});
+                ocf.findResources({deviceId: "127.0.0.1", resourcePath: "/observe-test2"});
+            });
+        });
+
+        it('discovery sessions work', function(done) {
+            var completed = {};
+
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.onresourcefound = function(event) {
+                    if (event.resource.id.resourcePath === "/session-test/a") {
+                        ocf.cancelDiscovery("session-a").then(function(cancelled) {
+                            expect(cancelled).toBe(true);
+                        });
+                    }
+                };
+                ocf.ondiscoverycomplete = function(event) {
+                    completed[event.discoveryComplete] = event;
+                    if (Object.keys(completed).length < 2) {
+                        return;
+                    }
+
+                    ocf.onresourcefound = null;
+                    ocf.ondiscoverycomplete = function() {};
+                    expect(completed["session-a"].reason).toBe("cancelled");
+                    expect(completed["session-b"].reason).toBe("timeout");
+                    expect(completed["session-b"].found).toBe(1);
+                    expect(ocf.resources.length).toBe(2);
+                    done();
+                };
+
+                ocf.findResources({
+                    requestId: "session-a",
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/session-test/a"
+                }).then(function(requestId) {
+                    expect(requestId).toBe("session-a");
+                });
+                ocf.findResources({
+                    requestId: "session-b",
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/session-test/b",
+                    timeout: 200
+                });
+            });
+        });
+
+        it('multi-host discovery works', function(done) {
+            var hosts = ["10.0.0.1", "10.0.0.2", "10.0.0.3"];
+
+            ocf.resources = [];
+            ocf.setBackend("mock").then(function() {
+                ocf.ondiscoverycomplete = function(event) {
+                    ocf.ondiscoverycomplete = function() {};
+                    expect(event.reason).toBe("complete");
+                    expect(event.found).toBe(3);
+                    expect(event.hosts.length).toBe(3);
+                    event.hosts.forEach(function(host, i) {
+                        expect(host.host).toBe(hosts[i]);
+                        expect(host.status).toBe("answered");
+                        expect(host.latency).toBeDefined();
+                    });
+                    expect(ocf.resources.length).toBe(3);
+                    done();
+                };
+
+                ocf.findResources({
+                    deviceIds: hosts,
+                    resourcePath: "/fan-out-test",
+                    maxInFlight: 2,
+                    timeout: 1000
+                });
+            });
+        });
+
+        it('faulty backend works', function(done) {
+            var faults = {
+                seed: 1,
+                latency: {distribution: "uniform", min: 10, max: 50},
+                duplicateRate: 1
+            };
+
+            ocf.resources = [];
+            ocf.setBackend("faulty:mock", {faults: faults}).then(function() {
+                ocf.onresourcefound = function(event) {
+                    ocf.onresourcefound = null;
+                    ocf.update(event.resource).then(function() {
+                        ocf.getMetrics().then(function(metrics) {
+                            expect(ocf.resources.length).toBe(1);
+                            expect(metrics.counters["faults.duplicated"]).toBeGreaterThan(0);
+                            expect(metrics.histograms["delivered.updateResource"].count).toBeGreaterThan(0);
+                            ocf.setBackend("mock").then(done);
+                        });
+                    }, function(error) {
+                        done(new Error(error));
+                    });
+                };
+
+                ocf.findResources({
+                    deviceId: "127.0.0.1",
+                    resourcePath: "/faulty-test"
+                });
+            });
+        });
     });
 };
@@ -1,6 +1,140 @@
 cordova.define("cordova/plugin/ocf", function(require, exports, module) {
     var exec = require("cordova/exec");
 
+    /**************************************************************************
+    *  CBOR decoding                                                          *
+    *  Calls made with `format: "cbor"` get their results as ArrayBuffers,    *
+    *  encoded by the native OcfCborWriter.                                   *
+    **************************************************************************/
+    var CBOR_BREAK = {};
+
+    function decodeUtf8(bytes) {
+        if (typeof TextDecoder !== "undefined") {
+            return new TextDecoder("utf-8").decode(bytes);
+        }
+
+        var i, s = "";
+        for (i = 0; i < bytes.length; i++) {
+            s += String.fromCharCode(bytes[i]);
+        }
+        return decodeURIComponent(escape(s));
+    }
+
+    function decodeHalf(half) {
+        var exponent = (half >> 10) & 0x1f,
+            mantissa = half & 0x3ff,
+            sign = half & 0x8000 ? -1 : 1;
+
+        if (exponent === 0) {
+            return sign * Math.pow(2, -14) * (mantissa / 1024);
+        } else if (exponent === 0x1f) {
+            return mantissa ? NaN : sign * Infinity;
+        }
+        return sign * Math.pow(2, exponent - 15) * (1 + mantissa / 1024);
+    }
+
+    function decodeCbor(buffer) {
+        var view = new DataView(buffer),
+            bytes = new Uint8Array(buffer),
+            offset = 0;
+
+        function readArgument(info) {
+            var value;
+
+            if (info < 24) {
+                return info;
+            } else if (info === 24) {
+                value = view.getUint8(offset);
+                offset += 1;
+            } else if (info === 25) {
+                value = view.getUint16(offset);
+                offset += 2;
+            } else if (info === 26) {
+                value = view.getUint32(offset);
+                offset += 4;
+            } else if (info === 27) {
+                value = view.getUint32(offset) * 4294967296 +
+                        view.getUint32(offset + 4);
+                offset += 8;
+            } else if (info === 31) {
+                return -1;
+            } else {
+                throw new Error("Invalid CBOR additional info: " + info);
+            }
+            return value;
+        }
+
+        function readItem() {
+            var initial = bytes[offset++],
+                major = initial >> 5,
+                info = initial & 0x1f,
+                length, result, key, item, i;
+
+            if (major === 7) {
+                switch (info) {
+                    case 20: return false;
+                    case 21: return true;
+                    case 22: return null;
+                    case 23: return undefined;
+                    case 25:
+                        offset += 2;
+                        return decodeHalf(view.getUint16(offset - 2));
+                    case 26:
+                        offset += 4;
+                        return view.getFloat32(offset - 4);
+                    case 27:
+                        offset += 8;
+                        return view.getFloat64(offset - 8);
+                    case 31: return CBOR_BREAK;
+                    default: return readArgument(info);
+                }
+            }
+
+            length = readArgument(info);
+            switch (major) {
+                case 0:
+                    return length;
+                case 1:
+                    return -1 - length;
+                case 2:
+                case 3:
+                    item = bytes.subarray(offset, offset + length);
+                    offset += length;
+                    return major === 2 ? item : decodeUtf8(item);
+                case 4:
+                    result = [];
+                    for (i = 0; length < 0 || i < length; i++) {
+                        item = readItem();
+                        if (item === CBOR_BREAK) {
+                            break;
+                        }
+                        result.push(item);
+                    }
+                    return result;
+                case 5:
+                    result = {};
+                    for (i = 0; length < 0 || i < length; i++) {
+                        key = readItem();
+                        if (key === CBOR_BREAK) {
+                            break;
+                        }
+                        result[key] = readItem();
+                    }
+                    return result;
+                case 6:
+                    // Tags carry no meaning for us.
+                    return readItem();
+            }
+        }
+
+        return readItem();
+    }
+
+    // Results of calls that accept a `format` option.
+    function decodeResult(result) {
+        return result instanceof ArrayBuffer ? decodeCbor(result) : result;
+    }
+
     /**************************************************************************
     *  OcfPlugin                                                              *
     *  The Cordova plugin.                                                    *
@@ -8,6 +142,105 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
     var OcfPlugin = function() {
         this.backend = "iotivity";
         this.resources = [];
+
+        // Each `findResources` call is a discovery session of its own, named
+        // by its `requestId`.
+        this.nextDiscoveryId = 1;
+
+        // Resource updates are pushed by the native side in batches: a batch
+        // is flushed when `maxBatchSize` updates are queued or `maxLatency`
+        // milliseconds have passed, whichever comes first. While the stream
+        // is active, the polling fallback below stays quiet. When the native
+        // side closes the stream, polling takes over until we resubscribe.
+        // Each subscription gets an id, so that a replaced one closing
+        // doesn't affect the current one.
+        this.updateStreamOptions = {
+            maxBatchSize: 32,
+            maxLatency: 50,
+            format: "json"
+        };
+        this.updateStreamActive = false;
+
+        // The `seq` of the last delta applied to each resource, by key.
+        this.deltaSeqs = {};
+        this.updateStreamId = 0;
+
+        // Position in the native log of resources whose properties became
+        // available, and properties that arrived before their resource.
+        this.propertiesCursor = 0;
+        this.readyProperties = {};
+    }
+
+    // Positions in `resources` by key (`deviceId + resourcePath`). The
+    // plugin keeps the index in step with its own changes to `resources`;
+    // changes by the app are caught when they replace the array, change its
+    // length, or replace an entry that is then looked up.
+    OcfPlugin.prototype.__resourceIndex__ = function() {
+        var i, resource;
+
+        if (this.indexedResources !== this.resources ||
+            this.indexedLength !== this.resources.length)
+        {
+            this.resourceIndex = {};
+            for (i = 0; i < this.resources.length; i++) {
+                resource = this.resources[i];
+                this.resourceIndex[resource.id.deviceId + resource.id.resourcePath] = i;
+            }
+            this.indexedResources = this.resources;
+            this.indexedLength = this.resources.length;
+        }
+
+        return this.resourceIndex;
+    }
+
+    OcfPlugin.prototype.__invalidateResourceIndex__ = function() {
+        this.indexedResources = null;
+    }
+
+    OcfPlugin.prototype.__findResource__ = function(key) {
+        var index = this.__resourceIndex__(), resource;
+
+        if (!Object.prototype.hasOwnProperty.call(index, key)) {
+            return undefined;
+        }
+
+        resource = this.resources[index[key]];
+        if (resource.id.deviceId + resource.id.resourcePath !== key) {
+            // Replaced in place: look again in a fresh index.
+            this.__invalidateResourceIndex__();
+            index = this.__resourceIndex__();
+            if (!Object.prototype.hasOwnProperty.call(index, key)) {
+                return undefined;
+            }
+            resource = this.resources[index[key]];
+        }
+
+        return resource;
+    }
+
+    OcfPlugin.prototype.__addResource__ = function(resource) {
+        var index = this.__resourceIndex__();
+
+        this.resources.push(resource);
+        index[resource.id.deviceId + resource.id.resourcePath] = this.resources.length - 1;
+        this.indexedLength = this.resources.length;
+    }
+
+    OcfPlugin.prototype.__removeResource__ = function(resource) {
+        this.resources.splice(this.resources.indexOf(resource), 1);
+        this.__invalidateResourceIndex__();
+    }
+
+    // Drops a resource that has left the network, and tells the app.
+    OcfPlugin.prototype.__loseResource__ = function(id) {
+        var key = id.deviceId + id.resourcePath,
+            resource = this.__findResource__(key);
+
+        delete this.readyProperties[key];
+        if (resource !== undefined) {
+            this.__removeResource__(resource);
+            this.onresourcelost({resource: resource});
+        }
     }
 
     OcfPlugin.prototype.__compareResources__ = function(a, b) {
@@ -17,12 +250,32 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
         return aKey === bKey;
     }
 
-    OcfPlugin.prototype.setBackend = function(backend) {
+    // `options` are passed to the backend. The "mock" backend takes a
+    // `simulation` object, to simulate a fleet of devices instead of echoing
+    // requests: {devices, resourcesPerDevice, seed, discoveryWindow (ms),
+    // observeRate (notifications per second per resource), putLatency (ms),
+    // putLatencyJitter (ms)}.
+    //
+    // Both backends take a `liveness` object, to let go of resources that
+    // have left the network: {ttl (ms, 0 to keep everything), sweepInterval
+    // (ms), probe (whether idle resources get a GET before being dropped)}.
+    // Lost resources are removed from `resources`, and passed to
+    // `onresourcelost`.
+    //
+    // Any backend can be made to behave like it is on a bad network by
+    // prefixing it with "faulty:", e.g. "faulty:mock". Its `faults` option
+    // sets the latency distribution and the rates of dropped, duplicated and
+    // reordered results (see `OcfBackendFaulty`).
+    OcfPlugin.prototype.setBackend = function(backend, options) {
         var self = this;
 
         return new Promise(function(resolve, reject) {
             function successCallback() {
                 self.backend = backend;
+                self.deltaSeqs = {};
+                self.propertiesCursor = 0;
+                self.readyProperties = {};
+                self.__subscribeUpdates__();
                 resolve();
             }
 
@@ -31,35 +284,196 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
             }
 
             exec(successCallback, errorCallback, "OcfPlugin", "setBackend",
-                 [backend]);
+                 options === undefined ? [backend] : [backend, options]);
         });
     }
 
-    OcfPlugin.prototype.findResources = function(options) {
+    // Applies a delta (see `configureUpdates`) to the cached properties of
+    // its resource, and returns it in the same shape as a full update. If a
+    // delta was lost in between, the properties are fetched again.
+    OcfPlugin.prototype.__applyDelta__ = function(delta) {
+        var i, name, update = {},
+            resource = this.__findResource__(delta.key),
+            last = this.deltaSeqs[delta.key];
+
+        this.deltaSeqs[delta.key] = delta.seq;
+        if (!delta.full && last !== undefined && delta.seq !== last + 1) {
+            this.__resyncProperties__(delta.key);
+        }
+
+        if (resource === undefined) {
+            update[delta.key] = delta.changed;
+            return update;
+        }
+
+        if (delta.full) {
+            resource.properties = {};
+        }
+        for (name in delta.changed) {
+            resource.properties[name] = delta.changed[name];
+        }
+        for (i = 0; i < delta.removed.length; i++) {
+            delete resource.properties[delta.removed[i]];
+        }
+
+        update[delta.key] = resource.properties;
+        return update;
+    }
+
+    OcfPlugin.prototype.__resyncProperties__ = function(key) {
         var self = this;
 
-        if (options === undefined) {
-            options = {};
+        this.getProperties([key]).then(function(results) {
+            var resource;
+            if (results.length > 0) {
+                resource = self.__findResource__(key);
+                if (resource !== undefined) {
+                    resource.properties = results[0].properties;
+                }
+            }
+        }, function(error) {
+            console.error(error);
+        });
+    }
+
+    OcfPlugin.prototype.__dispatchUpdates__ = function(updates) {
+        var i, update, resource;
+
+        for (i = 0; i < updates.length; i++) {
+            if (updates[i].delta === true) {
+                updates[i] = this.__applyDelta__(updates[i]);
+            }
+        }
+
+        for (i = 0; i < updates.length; i++) {
+            update = updates[i];
+            resource = this.__findResource__(Object.keys(update)[0]);
+            if (resource !== undefined && resource.onupdate !== undefined) {
+                resource.onupdate({updates: updates});
+            }
+        }
+    }
+
+    OcfPlugin.prototype.__subscribeUpdates__ = function() {
+        var self = this,
+            id = ++self.updateStreamId;
+
+        function successCallback(updates) {
+            if (updates === "OK") {
+                // No updates: this is just the native call completing.
+                if (id === self.updateStreamId) {
+                    self.updateStreamActive = true;
+                }
+            } else {
+                // Batches are dispatched even from a replaced subscription:
+                // the native side flushes them before closing it, and they
+                // aren't queued anymore.
+                updates = decodeResult(updates);
+                if (Array.isArray(updates)) {
+                    self.__dispatchUpdates__(updates);
+                }
+            }
+        }
+
+        function errorCallback(error) {
+            if (id !== self.updateStreamId) {
+                // The native side closing a replaced subscription.
+                return;
+            }
+
+            // Fall back to polling, which resubscribes.
+            self.updateStreamActive = false;
+            console.error(error);
+        }
+
+        self.updateStreamActive = false;
+        exec(successCallback, errorCallback, "OcfPlugin",
+             "subscribeResourceUpdates", [self.updateStreamOptions]);
+    }
+
+    // `options` may filter by `deviceId`, and by:
+    //   resourceTypes (or resourceType): any of these types.
+    //   interfaces: any of these interfaces.
+    //   pathPrefixes: a path starting with any of these.
+    //   exclude: paths not matching any of these patterns ("*" matches
+    //     anything), by default the platform, device and security resources.
+    // Filters are applied natively, so that unwanted resources never cross
+    // the bridge. `format` ("json" or "cbor") selects how found resources
+    // cross the bridge.
+    //
+    // Calls can run concurrently, each with its own options. A call is named
+    // by `requestId` (one is made up if missing), which the promise resolves
+    // to, and which `cancelDiscovery` takes. With a `timeout` (ms), the
+    // discovery ends by itself. Ended discoveries are passed to
+    // `ondiscoverycomplete`, as {discoveryComplete (the request ID), reason
+    // ("complete", "timeout", "cancelled", "replaced", "evicted" or
+    // "closed"), found, duration (ms)}.
+    //
+    // Instead of `deviceId`, `deviceIds` lists hosts to query by unicast,
+    // `maxInFlight` (8) at a time, each given `hostTimeout` ms (5000, or
+    // `timeout`) to answer. Such a discovery completes when all hosts have
+    // answered or given up, and its summary has `hosts`: [{host, status
+    // ("answered", "failed", "timeout", or "pending"/"queued" when the
+    // deadline came first), latency (ms), resources, error}].
+    OcfPlugin.prototype.findResources = function(options) {
+        var self = this, args = {}, name;
+
+        if (options !== undefined) {
+            for (name in options) {
+                args[name] = options[name];
+            }
+        }
+        if (args.requestId === undefined) {
+            args.requestId = "js-" + this.nextDiscoveryId++;
         }
 
         return new Promise(function(resolve, reject) {
             function successCallback(event) {
                 if (event === "OK") {
                     // No event: this is just the native call completing.
-                    resolve();
+                    resolve(args.requestId);
                 } else {
-                    // Event passed: this is a "resource found" callback.
-                    var i, found = false;
+                    // Event passed: this is a "resource found" callback, a
+                    // "resource lost" one, or the end of the discovery.
+                    event = decodeResult(event);
 
-                    for (i = 0; i < self.resources.length; i++) {
-                        if (self.__compareResources__(self.resources[i], event.resource)) {
-                            found = true;
-                        }
+                    if (event.lost !== undefined) {
+                        self.__loseResource__(event.lost);
+                        return;
+                    }
+                    if (event.discoveryComplete !== undefined) {
+                        self.ondiscoverycomplete(event);
+                        return;
                     }
 
-                    if (!found) {
-                        self.resources.push(event.resource);
+                    var key = event.resource.id.deviceId + event.resource.id.resourcePath,
+                        found = self.__findResource__(key);
+
+                    if (found === undefined) {
+                        if (self.readyProperties[key] !== undefined) {
+                            event.resource.properties = self.readyProperties[key];
+                            delete self.readyProperties[key];
+                        }
+
+                        // Stale resources come from the native discovery
+                        // cache, and stay stale until live data arrives.
+                        if (event.stale) {
+                            event.resource.stale = true;
+                        }
+
+                        self.__addResource__(event.resource);
                         self.onresourcefound(event);
+                    } else if (found.stale && !event.stale) {
+                        // Live discovery has confirmed a cached resource:
+                        // refresh it in place.
+                        found.resourceTypes = event.resource.resourceTypes;
+                        found.interfaces = event.resource.interfaces;
+                        found.mediaTypes = event.resource.mediaTypes;
+                        found.observable = event.resource.observable;
+                        if (Object.keys(event.resource.properties).length > 0) {
+                            found.properties = event.resource.properties;
+                            delete found.stale;
+                        }
                     }
                 }
             }
@@ -69,7 +483,24 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
             }
 
             exec(successCallback, errorCallback, "OcfPlugin", "findResources",
-                 [options]);
+                 [args]);
+        });
+    };
+
+    // Ends the discovery named `requestId`. Resolves to whether it was still
+    // in progress.
+    OcfPlugin.prototype.cancelDiscovery = function(requestId) {
+        return new Promise(function(resolve, reject) {
+            function successCallback(result) {
+                resolve(result.cancelled);
+            }
+
+            function errorCallback(error) {
+                reject(error);
+            }
+
+            exec(successCallback, errorCallback, "OcfPlugin", "cancelDiscovery",
+                 [requestId]);
         });
     };
 
@@ -100,7 +531,10 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
 
         return new Promise(function(resolve, reject) {
             function successCallback(event) {
-                resolve();
+                if (event !== "OK") {
+                    // Event passed: the native PUT has completed.
+                    resolve(event);
+                }
             }
 
             function errorCallback(error) {
@@ -111,7 +545,160 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
         });
     }
 
+    // Fetches the current properties of the resources with the given keys
+    // (`deviceId + resourcePath`) in a single call. Resolves with
+    // `[{key: ..., properties: {...}}]`; unknown keys are left out.
+    // `options.format` selects the bridge encoding: "json" or "cbor".
+    OcfPlugin.prototype.getProperties = function(keys, options) {
+        var format = options !== undefined ? options.format : undefined;
+
+        return new Promise(function(resolve, reject) {
+            function successCallback(result) {
+                resolve(decodeResult(result).resources);
+            }
+
+            function errorCallback(error) {
+                reject(error);
+            }
+
+            exec(successCallback, errorCallback, "OcfPlugin",
+                 "getResourcesProperties", [{keys: keys, format: format}]);
+        });
+    }
+
+    // Updates many resources at once. The native side issues the updates
+    // concurrently, up to `options.maxInFlight` at a time, and resolves with
+    // one result per resource: `[{key: ..., status: "ok"|"error", error: ...}]`.
+    OcfPlugin.prototype.updateResources = function(resources, options) {
+        return new Promise(function(resolve, reject) {
+            function successCallback(event) {
+                if (event !== "OK") {
+                    // Event passed: all the updates have completed.
+                    resolve(event.results);
+                }
+            }
+
+            function errorCallback(error) {
+                reject(error);
+            }
+
+            exec(successCallback, errorCallback, "OcfPlugin", "updateResources",
+                 [resources, options || {}]);
+        });
+    }
+
+    // Configures how the native side buffers resource updates. Options:
+    //   capacity: maximum number of queued updates.
+    //   policy: "coalesce", "drop-oldest" or "block".
+    //   blockTimeout: how long (ms) a "block" producer waits for room.
+    //   resourcePolicies: {<resource key>: <policy>} overrides.
+    //   delta: if true, only changed properties cross the bridge, and they
+    //     are merged into the cached `resource.properties` here; `onupdate`
+    //     still gets the full properties of the resource.
+    //   format: how update batches are encoded on the bridge, "json" or
+    //     "cbor".
+    //   delivery: which observe notifications are queued at all, e.g.
+    //     {minInterval: 100, maxRate: 5, burst: 5,
+    //      deadband: {temperature: {absolute: 0.5}, "*": {percent: 1}}}.
+    //     Notifications held back by `minInterval` or `maxRate` aren't
+    //     lost: the latest one is delivered as soon as allowed. null
+    //     removes the policy.
+    //   resourceDelivery: {<resource key>: <delivery policy>} overrides.
+    // Resolves with the queue status, including dropped/coalesced counters,
+    // and the delivery status in `delivery`.
+    OcfPlugin.prototype.configureUpdates = function(options) {
+        var self = this;
+
+        options = options || {};
+
+        return new Promise(function(resolve, reject) {
+            function successCallback(status) {
+                if (options.format !== undefined &&
+                    options.format !== self.updateStreamOptions.format)
+                {
+                    self.updateStreamOptions.format = options.format;
+                    if (self.updateStreamId > 0) {
+                        self.__subscribeUpdates__();
+                    }
+                }
+                resolve(status);
+            }
+
+            exec(successCallback, reject, "OcfPlugin", "configureResourceUpdates",
+                 [options]);
+        });
+    }
+
+    // Starts observing `resource`, if it isn't already, and marks it as
+    // recently used. Resolves with whether it is observed.
+    OcfPlugin.prototype.observe = function(resource) {
+        var key = resource.id.handle !== undefined ?
+            resource.id.handle : resource.id.deviceId + resource.id.resourcePath;
+
+        return new Promise(function(resolve, reject) {
+            function successCallback(result) {
+                resolve(result.observed);
+            }
+
+            exec(successCallback, reject, "OcfPlugin", "observeResource", [key]);
+        });
+    }
+
+    // Stops observing `resource`.
+    OcfPlugin.prototype.unobserve = function(resource) {
+        var key = resource.id.handle !== undefined ?
+            resource.id.handle : resource.id.deviceId + resource.id.resourcePath;
+
+        return new Promise(function(resolve, reject) {
+            exec(resolve, reject, "OcfPlugin", "unobserveResource", [key]);
+        });
+    }
+
+    // Configures which resources the native side observes. Options:
+    //   autoObserve: if false, found resources are only observed once
+    //     passed to `observe`. Defaults to true.
+    //   maxObservations: how many resources can be observed at once, 0 for
+    //     no limit. Once reached, found resources aren't observed anymore,
+    //     and `observe` makes room by cancelling the least recently used
+    //     (observed, read or updated) observation, automatic ones first.
+    // Resolves with the status, including the observed keys, the number of
+    // evicted observations, and the number of found resources `skipped`
+    // for lack of room.
+    OcfPlugin.prototype.configureObservations = function(options) {
+        return new Promise(function(resolve, reject) {
+            exec(resolve, reject, "OcfPlugin", "configureObservations",
+                 [options || {}]);
+        });
+    }
+
+    // Resolves with the state of the native operation pool: queue depth,
+    // outstanding native requests (`inFlight`, at most `maxInFlight`), and
+    // per priority ("user", "prefetch", "discovery") task counts and
+    // wait/run latencies.
+    OcfPlugin.prototype.getExecutorStats = function() {
+        return new Promise(function(resolve, reject) {
+            exec(resolve, reject, "OcfPlugin", "getExecutorStats", []);
+        });
+    }
+
+    // Resolves with the plugin's runtime metrics:
+    //   histograms: latencies in ms (count, meanMs, p50Ms, p95Ms, p99Ms,
+    //     maxMs) of "get" and "put" round trips, and of "observe"
+    //     notifications waiting to reach us.
+    //   counters: e.g. "get.timeouts", "discovery.resources".
+    //   groups: keyed counters, e.g. "discovery.resourceTypes", and "bytes"
+    //     and "messages" sent per action.
+    //   gauges: current queue depths and registry sizes.
+    //   executor: as returned by `getExecutorStats`.
+    OcfPlugin.prototype.getMetrics = function() {
+        return new Promise(function(resolve, reject) {
+            exec(resolve, reject, "OcfPlugin", "getMetrics", []);
+        });
+    }
+
     OcfPlugin.prototype.onresourcefound = function(event) {};
+    OcfPlugin.prototype.onresourcelost = function(event) {};
+    OcfPlugin.prototype.ondiscoverycomplete = function(event) {};
     OcfPlugin.prototype.ondevicefound = function(event) {};
 
     /**************************************************************************
@@ -120,43 +707,50 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
 
     var ocf = new OcfPlugin();
 
-    // To get resource update events, we need to poll from the JS side.
+    // Resource update events are normally pushed through the update stream;
+    // if that is not available, we poll from the JS side, and try to
+    // subscribe again.
     setInterval(function() {
+        if (ocf.updateStreamActive) {
+            return;
+        }
+
+        if (ocf.updateStreamId > 0) {
+            ocf.__subscribeUpdates__();
+        }
+
         function successCallback(updates) {
-            var i, j, update, resource;
-
-            for (i = 0; i < updates.length; i++) {
-                update = updates[i];
-                for (j = 0; j < ocf.resources.length; j++) {
-                    resource = ocf.resources[j];
-                    if (Object.keys(update)[0] === resource.id.deviceId + resource.id.resourcePath) {
-                        if (resource.onupdate !== undefined) {
-                            resource.onupdate({updates: updates});
-                        }
-                    }
-                }
-            }
+            ocf.__dispatchUpdates__(decodeResult(updates));
         }
 
         function errorCallback(error) {
             console.error(error);
         }
 
-        exec(successCallback, errorCallback, "OcfPlugin", "getResourceUpdates", []);
+        exec(successCallback, errorCallback, "OcfPlugin", "getResourceUpdates",
+             [{format: ocf.updateStreamOptions.format}]);
     }, 2000);
 
-    // Resource properties are fetched asynchronously in the plugin, so we poll
-    // to get them.
+    // Resource properties are fetched asynchronously in the plugin. While
+    // some resource has no properties (or only cached ones), we ask for all
+    // the resources that became ready since the last time, in a single call.
     setInterval(function() {
-        var i;
+        var i, waiting = false;
 
         function successCallback(result) {
-            var i, resource, entry, resourceId, properties;
-
-            for (i = 0; i < ocf.resources.length; i++) {
-                resource = ocf.resources[i];
-                if (result.key === resource.id.deviceId + resource.id.resourcePath) {
-                    resource.properties = result.properties;
+            var i, entry, resource;
+
+            result = decodeResult(result);
+            ocf.propertiesCursor = result.cursor;
+            for (i = 0; i < result.resources.length; i++) {
+                entry = result.resources[i];
+                resource = ocf.__findResource__(entry.key);
+                if (resource !== undefined) {
+                    resource.properties = entry.properties;
+                    delete resource.stale;
+                } else {
+                    // Not reported to us yet: keep it for `findResources`.
+                    ocf.readyProperties[entry.key] = entry.properties;
                 }
             }
         }
@@ -166,15 +760,20 @@ cordova.define("cordova/plugin/ocf", function(require, exports, module) {
         }
 
         for (i = 0; i < ocf.resources.length; i++) {
-            resource = ocf.resources[i];
-            if (Object.keys(resource.properties).length === 0) {
-                // Only do this for resources that have no properties.
-                exec(
-                    successCallback, errorCallback,
-                    "OcfPlugin", "getResourceProperties",
-                    [resource.id.deviceId + resource.id.resourcePath]);
+            if (ocf.resources[i].stale ||
+                Object.keys(ocf.resources[i].properties).length === 0)
+            {
+                waiting = true;
+                break;
             }
         }
+
+        if (waiting) {
+            exec(
+                successCallback, errorCallback,
+                "OcfPlugin", "getResourcesProperties",
+                [{since: ocf.propertiesCursor}]);
+        }
     }, 2000);
 
     module.exports = ocf;